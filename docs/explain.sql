@@ -0,0 +1,53 @@
+-- Планы и время выполнения запросов репозиториев searchengine.model (MySQL 8.0.18+, EXPLAIN ANALYZE).
+-- Запускать до и после миграции V3__query_indexes.sql на одной и той же базе данных и сравнивать результаты.
+-- Перед запуском задайте параметры: сайт, путь страницы, леммы и страницу из реальных данных.
+
+SET @site_id = (SELECT MIN(id) FROM sites);
+SET @path = '/';
+SET @lemma = 'поиск';
+SET @page_id = (SELECT MIN(id) FROM pages WHERE site_id = @site_id);
+SET @lemma_id = (SELECT MIN(id) FROM lemmas WHERE site_id = @site_id AND lemma = @lemma);
+
+-- SiteRepository
+SET @url = (SELECT url FROM sites WHERE id = @site_id);
+EXPLAIN ANALYZE SELECT * FROM sites WHERE url IN (@url);                                          -- findByUrlIn
+EXPLAIN ANALYZE SELECT * FROM sites WHERE status = 'INDEXING' AND url IN (@url);                  -- findByStatusAndUrlIn
+EXPLAIN ANALYZE SELECT * FROM sites WHERE url = @url ORDER BY version DESC LIMIT 1;               -- findFirstByUrlOrderByVersionDesc (после V4)
+EXPLAIN ANALYZE SELECT * FROM sites WHERE published AND url = @url;                               -- findByPublishedTrueAndUrl (после V4)
+EXPLAIN ANALYZE SELECT * FROM sites WHERE published AND url IN (@url);                            -- findByPublishedTrueAndUrlIn (после V4)
+
+-- PageRepository
+EXPLAIN ANALYZE SELECT * FROM pages WHERE site_id IN (@site_id);                                  -- findBySiteIn
+EXPLAIN ANALYZE SELECT * FROM pages WHERE site_id = @site_id AND path = @path;                    -- findBySiteAndPath (до V3)
+EXPLAIN ANALYZE SELECT * FROM pages
+                WHERE site_id = @site_id AND path_hash = CONV(LEFT(MD5(@path), 15), 16, 10) AND path = @path; -- (после V3)
+EXPLAIN ANALYZE SELECT * FROM pages WHERE site_id = @site_id AND path IN (@path, '/about');       -- findBySiteAndPathIn (до V3)
+EXPLAIN ANALYZE SELECT * FROM pages
+                WHERE site_id = @site_id
+                  AND path_hash IN (CONV(LEFT(MD5(@path), 15), 16, 10), CONV(LEFT(MD5('/about'), 15), 16, 10)); -- (после V3)
+EXPLAIN ANALYZE SELECT COUNT(*) FROM pages WHERE site_id = @site_id;                              -- countBySite
+EXPLAIN ANALYZE SELECT id FROM pages WHERE site_id = @site_id ORDER BY id LIMIT 200;              -- findIdsBySite
+EXPLAIN ANALYZE SELECT * FROM pages WHERE id IN (@page_id);                                       -- findAllById
+
+-- LemmaRepository
+EXPLAIN ANALYZE SELECT * FROM lemmas WHERE site_id IN (@site_id);                                 -- findBySiteIn
+EXPLAIN ANALYZE SELECT * FROM lemmas WHERE site_id = @site_id AND lemma IN (@lemma, 'движок');    -- findBySiteAndLemmaIn
+EXPLAIN ANALYZE SELECT * FROM lemmas WHERE site_id IN (@site_id) AND lemma IN (@lemma, 'движок'); -- findBySiteInAndLemmaIn
+EXPLAIN ANALYZE SELECT id FROM lemmas WHERE site_id = @site_id ORDER BY id LIMIT 2000;            -- findIdsBySite
+EXPLAIN ANALYZE SELECT * FROM lemmas WHERE id IN (@lemma_id);                                     -- findAllById
+
+-- IndexRepository
+EXPLAIN ANALYZE SELECT * FROM indexes WHERE page_id = @page_id;                                   -- findByPage
+EXPLAIN ANALYZE SELECT i.page_id AS pageId, SUM(i.rank_count) AS relevance, COUNT(*) OVER() AS total
+                FROM indexes i
+                WHERE i.lemma_id IN (SELECT id FROM lemmas WHERE lemma IN (@lemma, 'движок'))
+                GROUP BY i.page_id
+                HAVING COUNT(*) = 2
+                ORDER BY relevance DESC, pageId
+                LIMIT 20;                                                                         -- findRelevance
+EXPLAIN ANALYZE SELECT i.lemma_id, i.page_id, i.rank_count FROM indexes i
+                WHERE i.lemma_id IN (@lemma_id) ORDER BY i.lemma_id, i.page_id;                   -- findPostings
+
+-- PostingsRepository и PageContentRepository: только поиск по первичному ключу
+EXPLAIN ANALYZE SELECT * FROM postings WHERE lemma_id IN (@lemma_id);                             -- findAllById
+EXPLAIN ANALYZE SELECT * FROM page_contents WHERE page_id IN (@page_id);                          -- findAllById
@@ -0,0 +1,53 @@
+package db.migration;
+
+import lombok.extern.slf4j.Slf4j;
+import org.flywaydb.core.api.migration.BaseJavaMigration;
+import org.flywaydb.core.api.migration.Context;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+
+/**
+ * Перенос html страниц из столбца pages.content (прежний формат хранения) в таблицу page_contents. Сжатие выполняется
+ * функцией MySQL COMPRESS(), формат которой читает ContentStore. После переноса столбец удаляется.
+ * <p>
+ * Страницы переносятся диапазонами идентификаторов, каждый диапазон - отдельной транзакцией: перенос всей таблицы одним
+ * запросом держал бы блокировки и журнал отмены на размер всего содержимого. Прерванный перенос при следующем запуске
+ * продолжается: уже перенесённые страницы пропускаются (INSERT IGNORE).
+ */
+@Slf4j
+public class V2_1__page_contents_copy extends BaseJavaMigration {
+
+    private static final int CHUNK_SIZE = 1000; // Количество страниц, переносимых одним запросом
+
+    // Каждый диапазон фиксируется сразу, а не в общей транзакции миграции
+    @Override
+    public boolean canExecuteInTransaction() {
+        return false;
+    }
+
+    @Override
+    public void migrate(Context context) {
+        var jdbcTemplate = new JdbcTemplate(new SingleConnectionDataSource(context.getConnection(), true));
+        var columns = jdbcTemplate.queryForObject("""
+                SELECT COUNT(*) FROM information_schema.columns
+                WHERE table_schema = DATABASE() AND table_name = 'pages' AND column_name = 'content'""", Integer.class);
+        if (columns == null || columns == 0) {
+            return;
+        }
+
+        log.info("Запуск переноса содержимого страниц в таблицу page_contents");
+        var start = System.currentTimeMillis();
+
+        var maxId = jdbcTemplate.queryForObject("SELECT COALESCE(MAX(id), 0) FROM pages", Integer.class);
+        for (var fromId = 0; maxId != null && fromId < maxId; fromId += CHUNK_SIZE) {
+            jdbcTemplate.update("""
+                    INSERT IGNORE INTO page_contents (page_id, data)
+                    SELECT p.id, COMPRESS(p.content) FROM pages p
+                    WHERE p.id > ? AND p.id <= ? AND p.content <> ''""", fromId, fromId + CHUNK_SIZE);
+        }
+
+        jdbcTemplate.execute("ALTER TABLE pages DROP COLUMN content");
+
+        log.info("Содержимое страниц перенесено за {} мс.", System.currentTimeMillis() - start);
+    }
+}
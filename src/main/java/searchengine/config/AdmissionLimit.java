@@ -0,0 +1,63 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+import java.time.Duration;
+
+/**
+ * Ограничение одновременных запросов одного вида (admission-settings)
+ */
+@Getter
+@Setter
+@NoArgsConstructor
+public class AdmissionLimit {
+    int maxConcurrency = 8; // Наибольшее количество одновременно выполняемых запросов
+    int queueSize = 32; // Сколько запросов может ожидать освобождения места, остальные отклоняются сразу
+    Duration queueTimeout = Duration.ofSeconds(1); // Наибольшее ожидание в очереди, затем запрос отклоняется
+    boolean adaptive = false; // Подстраивать ли предел по времени выполнения запросов (AIMD)
+    int minConcurrency = 1; // Нижняя граница подстраиваемого предела
+    Duration latencyThreshold = Duration.ofSeconds(1); // Время выполнения, при превышении которого предел снижается
+
+    public AdmissionLimit(int maxConcurrency, int queueSize, Duration queueTimeout) {
+        this.maxConcurrency = maxConcurrency;
+        this.queueSize = queueSize;
+        this.queueTimeout = queueTimeout;
+    }
+
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 1) {
+            throw new IllegalArgumentException("maxConcurrency не может быть меньше 1");
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public void setQueueSize(int queueSize) {
+        if (queueSize < 0) {
+            throw new IllegalArgumentException("queueSize не может быть меньше 0");
+        }
+        this.queueSize = queueSize;
+    }
+
+    public void setQueueTimeout(Duration queueTimeout) {
+        if (queueTimeout.isNegative()) {
+            throw new IllegalArgumentException("queueTimeout не может быть отрицательным");
+        }
+        this.queueTimeout = queueTimeout;
+    }
+
+    public void setMinConcurrency(int minConcurrency) {
+        if (minConcurrency < 1) {
+            throw new IllegalArgumentException("minConcurrency не может быть меньше 1");
+        }
+        this.minConcurrency = minConcurrency;
+    }
+
+    public void setLatencyThreshold(Duration latencyThreshold) {
+        if (latencyThreshold.isNegative() || latencyThreshold.isZero()) {
+            throw new IllegalArgumentException("latencyThreshold должен быть больше 0");
+        }
+        this.latencyThreshold = latencyThreshold;
+    }
+}
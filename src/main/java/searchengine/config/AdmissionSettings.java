@@ -0,0 +1,19 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "admission-settings")
+public class AdmissionSettings {
+    // Поиск (/api/search, /api/search/batch)
+    AdmissionLimit search = new AdmissionLimit(8, 32, Duration.ofSeconds(1));
+    // Индексация отдельной страницы и запуск/остановка индексации
+    AdmissionLimit indexing = new AdmissionLimit(2, 4, Duration.ofSeconds(5));
+}
@@ -0,0 +1,100 @@
+package searchengine.config;
+
+import com.zaxxer.hikari.HikariDataSource;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.jdbc.DataSourceBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.jdbc.datasource.LazyConnectionDataSourceProxy;
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.HashMap;
+
+/**
+ * Раздельные пулы соединений с базой данных для поиска и индексации (workload-settings) и необязательная реплика для
+ * чтения (replica-settings). Репозитории используют один источник данных, который выбирает пул по виду нагрузки
+ * текущего потока ({@link Workload}), а внутри области {@link ReplicaReads} - реплику для запросов без транзакции или
+ * в транзакции только для чтения. Пулы - отдельные бины HikariDataSource, поэтому их использование выводится в
+ * метриках hikaricp.connections.* с тегом pool.
+ */
+@Configuration
+public class DataSourceConfig {
+
+    private static final String REPLICA = "replica";
+
+    @Bean
+    public HikariDataSource searchDataSource(DataSourceProperties properties, WorkloadSettings settings) {
+        return createPool(properties, "search", settings.getSearchConnections());
+    }
+
+    @Bean
+    public HikariDataSource indexingDataSource(DataSourceProperties properties, WorkloadSettings settings) {
+        return createPool(properties, "indexing", settings.getIndexingConnections());
+    }
+
+    @Bean
+    @ConditionalOnProperty(prefix = "replica-settings", name = "url")
+    public HikariDataSource replicaDataSource(DataSourceProperties properties, ReplicaSettings settings) {
+        var pool = DataSourceBuilder.create()
+                .type(HikariDataSource.class)
+                .driverClassName(properties.determineDriverClassName())
+                .url(settings.getUrl())
+                .username(settings.getUsername() == null ? properties.determineUsername() : settings.getUsername())
+                .password(settings.getPassword() == null ? properties.determinePassword() : settings.getPassword())
+                .build();
+        pool.setPoolName(REPLICA);
+        pool.setMaximumPoolSize(settings.getConnections());
+        pool.setReadOnly(true);
+
+        return pool;
+    }
+
+    /**
+     * Пул выбирается при первом запросе, а не при начале транзакции (LazyConnectionDataSourceProxy): к этому моменту
+     * уже известно, что транзакция только для чтения.
+     */
+    @Bean
+    @Primary
+    public DataSource dataSource(@Qualifier("searchDataSource") HikariDataSource searchDataSource,
+                                 @Qualifier("indexingDataSource") HikariDataSource indexingDataSource,
+                                 @Qualifier("replicaDataSource") ObjectProvider<HikariDataSource> replicaDataSource) {
+        var replica = replicaDataSource.getIfAvailable();
+        var dataSource = new AbstractRoutingDataSource() {
+            @Override
+            protected Object determineCurrentLookupKey() {
+                if (replica != null && ReplicaReads.isActive()
+                        && (!TransactionSynchronizationManager.isActualTransactionActive()
+                        || TransactionSynchronizationManager.isCurrentTransactionReadOnly())) {
+                    return REPLICA;
+                }
+                return Workload.current();
+            }
+        };
+
+        var targets = new HashMap<Object, Object>();
+        targets.put(Workload.SEARCH, searchDataSource);
+        targets.put(Workload.INDEXING, indexingDataSource);
+        if (replica != null) {
+            targets.put(REPLICA, replica);
+        }
+        dataSource.setTargetDataSources(targets);
+        dataSource.setDefaultTargetDataSource(searchDataSource);
+        dataSource.afterPropertiesSet();
+
+        return new LazyConnectionDataSourceProxy(dataSource);
+    }
+
+    private static HikariDataSource createPool(DataSourceProperties properties, String name, int size) {
+        var pool = properties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+        pool.setPoolName(name);
+        pool.setMaximumPoolSize(size);
+
+        return pool;
+    }
+}
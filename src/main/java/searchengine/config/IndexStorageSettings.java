@@ -0,0 +1,48 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "index-storage-settings")
+public class IndexStorageSettings {
+    boolean postings = false; // Вести ли сжатые списки вхождений лемм (таблица postings)
+    long mergeInterval = 60_000; // Интервал слияния накопленных изменений со списками вхождений, мс
+    boolean segments = false; // Вести ли сегменты индекса на диске (файлы, отображаемые в память)
+    String segmentsPath = "index-segments"; // Каталог сегментов
+    int segmentsMergeFactor = 4; // Количество сегментов близкого размера, при котором они сливаются в один
+    long maxSegmentSize = 1L << 30; // Наибольший размер сегмента, получаемого слиянием, байт
+
+    public void setSegmentsPath(String segmentsPath) {
+        if (segmentsPath == null || segmentsPath.isBlank()) {
+            throw new IllegalArgumentException("segmentsPath не может быть пустым");
+        }
+        this.segmentsPath = segmentsPath;
+    }
+
+    public void setSegmentsMergeFactor(int segmentsMergeFactor) {
+        if (segmentsMergeFactor < 2) {
+            throw new IllegalArgumentException("segmentsMergeFactor не может быть меньше 2");
+        }
+        this.segmentsMergeFactor = segmentsMergeFactor;
+    }
+
+    public void setMaxSegmentSize(long maxSegmentSize) {
+        // Сегмент отображается в память одним буфером
+        if (maxSegmentSize < 1 << 20 || maxSegmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("maxSegmentSize должен быть от 1 МБ до 2 ГБ");
+        }
+        this.maxSegmentSize = maxSegmentSize;
+    }
+
+    public void setMergeInterval(long mergeInterval) {
+        if (mergeInterval < 1) {
+            throw new IllegalArgumentException("mergeInterval должен быть больше 0");
+        }
+        this.mergeInterval = mergeInterval;
+    }
+}
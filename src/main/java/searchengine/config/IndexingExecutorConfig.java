@@ -0,0 +1,56 @@
+package searchengine.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.jvm.ExecutorServiceMetrics;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.Collections;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+
+@Configuration
+public class IndexingExecutorConfig {
+
+    /**
+     * Пул обхода сайтов (задачи PageAnalyzer) вместо общего ForkJoinPool.commonPool(): обход не занимает потоки
+     * parallel stream и CompletableFuture остального приложения. Размер - workload-settings.crawler-parallelism.
+     * Потоки используют пул соединений индексации. Метрики пула - executor.* с тегом name=crawlerPool.
+     */
+    @Bean("crawlerPool")
+    public ForkJoinPool getCrawlerPool(WorkloadSettings settings, MeterRegistry meterRegistry) {
+        ForkJoinPool.ForkJoinWorkerThreadFactory threadFactory = pool -> {
+            var thread = new ForkJoinWorkerThread(pool) {
+                @Override
+                protected void onStart() {
+                    super.onStart();
+                    Workload.INDEXING.assignToCurrentThread();
+                }
+            };
+            thread.setName("crawler-" + thread.getPoolIndex());
+            return thread;
+        };
+        var pool = new ForkJoinPool(settings.getCrawlerParallelism(), threadFactory, null, false);
+        new ExecutorServiceMetrics(pool, "crawlerPool", Collections.emptyList()).bindTo(meterRegistry);
+
+        return pool;
+    }
+
+    /**
+     * Потоки полной индексации (запуск, остановка, публикация версий) и индексации отдельных страниц вместо
+     * создаваемых для каждой операции потоков. Размер - workload-settings.indexing-threads, остальные операции ожидают
+     * в очереди. Потоки используют пул соединений индексации. Метрики - executor.* с тегом name=indexingExecutor.
+     */
+    @Bean("indexingExecutor")
+    public ThreadPoolTaskExecutor getIndexingExecutor(WorkloadSettings settings) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("indexing-");
+        executor.setCorePoolSize(settings.getIndexingThreads());
+        executor.setMaxPoolSize(settings.getIndexingThreads());
+        executor.setTaskDecorator(Workload.INDEXING::wrap);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+
+        return executor;
+    }
+}
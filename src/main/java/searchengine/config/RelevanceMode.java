@@ -0,0 +1,28 @@
+package searchengine.config;
+
+/**
+ * Способ расчёта релевантности страниц при поиске
+ */
+public enum RelevanceMode {
+    /**
+     * Отдельный запрос для каждой леммы с последующим пересечением результатов в Java
+     */
+    ITERATIVE,
+    /**
+     * Один группирующий запрос: пересечение, суммирование, сортировка и ограничение выполняются в базе данных
+     */
+    AGGREGATE,
+    /**
+     * Сжатые списки вхождений лемм (таблица postings): одно чтение на лемму, пересечение в Java
+     */
+    POSTINGS,
+    /**
+     * Сегменты индекса на диске (index-storage-settings.segments): списки вхождений читаются из отображённых в память
+     * файлов, пересечение в Java. Пока сегменты строятся, используется AGGREGATE.
+     */
+    SEGMENTS,
+    /**
+     * Инвертированный индекс в памяти приложения. Пока индекс загружается, используется AGGREGATE.
+     */
+    MEMORY
+}
@@ -0,0 +1,42 @@
+package searchengine.config;
+
+import java.util.function.Supplier;
+
+/**
+ * Область чтения из реплики базы данных. Внутри области запросы вне транзакций и в транзакциях только для чтения
+ * выполняются в реплике ({@link DataSourceConfig}), запросы в остальных транзакциях - в основной базе данных.
+ * Область действует в потоке, который её открыл, и в задачах, переданных им в пул searchExecutor.
+ */
+public final class ReplicaReads {
+
+    private static final ThreadLocal<Boolean> ACTIVE = new ThreadLocal<>();
+
+    private ReplicaReads() {
+    }
+
+    public static boolean isActive() {
+        return Boolean.TRUE.equals(ACTIVE.get());
+    }
+
+    public static <T> T call(Supplier<T> action) {
+        var previous = ACTIVE.get();
+        ACTIVE.set(true);
+        try {
+            return action.get();
+        } finally {
+            ACTIVE.set(previous);
+        }
+    }
+
+    // Задача выполняется в области чтения из реплики, если задача передана в пул из этой области
+    public static Runnable propagate(Runnable task) {
+        if (!isActive()) {
+            return task;
+        }
+
+        return () -> call(() -> {
+            task.run();
+            return null;
+        });
+    }
+}
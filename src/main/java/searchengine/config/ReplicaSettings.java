@@ -0,0 +1,38 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "replica-settings")
+public class ReplicaSettings {
+    String url; // Адрес JDBC реплики базы данных. Если не задан, все запросы выполняются в основной базе данных
+    String username; // Если не задано, используется spring.datasource.username
+    String password; // Если не задано, используется spring.datasource.password
+    int connections = 10; // Размер пула соединений с репликой
+    Duration maxLag = Duration.ofSeconds(30); // Сколько после изменения сайта его данные читаются из основной базы
+
+    public boolean isEnabled() {
+        return url != null && !url.isBlank();
+    }
+
+    public void setConnections(int connections) {
+        if (connections < 1) {
+            throw new IllegalArgumentException("connections не может быть меньше 1");
+        }
+        this.connections = connections;
+    }
+
+    public void setMaxLag(Duration maxLag) {
+        if (maxLag.isNegative()) {
+            throw new IllegalArgumentException("maxLag не может быть отрицательным");
+        }
+        this.maxLag = maxLag;
+    }
+}
@@ -0,0 +1,30 @@
+package searchengine.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.ThreadPoolExecutor;
+
+@Configuration
+public class SearchExecutorConfig {
+
+    /**
+     * Пул потоков для параллельного расчёта релевантности по сайтам. Размер ограничен настройкой
+     * search-settings.parallelism. Если очередь заполнена, задача отклоняется (TaskRejectedException), а сайт
+     * исключается из частичного ответа. Задачи читают из реплики базы данных, если из неё читает поток запроса.
+     */
+    @Bean("searchExecutor")
+    public ThreadPoolTaskExecutor getSearchExecutor(SearchSettings searchSettings) {
+        var executor = new ThreadPoolTaskExecutor();
+        executor.setThreadNamePrefix("search-");
+        executor.setCorePoolSize(searchSettings.getParallelism());
+        executor.setMaxPoolSize(searchSettings.getParallelism());
+        executor.setQueueCapacity(searchSettings.getParallelism() * 16);
+        executor.setRejectedExecutionHandler(new ThreadPoolExecutor.AbortPolicy());
+        executor.setTaskDecorator(ReplicaReads::propagate);
+        executor.setWaitForTasksToCompleteOnShutdown(false);
+
+        return executor;
+    }
+}
@@ -4,6 +4,9 @@ import lombok.Getter;
 import lombok.Setter;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 @Getter
 @Setter
@@ -11,6 +14,17 @@ import org.springframework.stereotype.Component;
 @ConfigurationProperties(prefix = "search-settings")
 public class SearchSettings {
     int wordsRange = 2;
+    RelevanceMode relevanceMode = RelevanceMode.AGGREGATE;
+    DataSize cacheMemory = DataSize.ofMegabytes(16); // Объём памяти кеша результатов поиска, 0 - кеш отключён
+    Duration coalescingTimeout = Duration.ofSeconds(10); // Ожидание результата одинакового одновременного запроса
+    int parallelism = 8; // Сколько сайтов обрабатывается параллельно при поиске по всем сайтам
+    Duration siteTimeout = Duration.ofSeconds(5); // Ожидание результата по одному сайту, затем ответ без него
+    Duration timeout = Duration.ofSeconds(5); // Время на поисковый запрос, если оно не задано в запросе
+    int suggestSize = 10; // Наибольшее количество подсказок по началу слова
+    long suggestRefreshInterval = 30_000; // Интервал перестроения словарей лемм изменившихся сайтов, мс
+    int fuzzyMaxDistance = 2; // Наибольшее количество правок при исправлении опечаток в нечётком поиске
+    int batchSize = 50; // Наибольшее количество запросов в пакетном поиске
+    double maxLemmaFrequency = 0.8; // Доля страниц, выше которой лемма исключается из поиска. 1 - не исключать
 
     public void setWordsRange(int wordsRange) {
         if (wordsRange < 1) {
@@ -18,4 +32,74 @@ public class SearchSettings {
         }
         this.wordsRange = wordsRange;
     }
+
+    public void setCacheMemory(DataSize cacheMemory) {
+        if (cacheMemory.isNegative()) {
+            throw new IllegalArgumentException("cacheMemory не может быть отрицательным");
+        }
+        this.cacheMemory = cacheMemory;
+    }
+
+    public void setCoalescingTimeout(Duration coalescingTimeout) {
+        if (coalescingTimeout.isNegative()) {
+            throw new IllegalArgumentException("coalescingTimeout не может быть отрицательным");
+        }
+        this.coalescingTimeout = coalescingTimeout;
+    }
+
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism не может быть меньше 1");
+        }
+        this.parallelism = parallelism;
+    }
+
+    public void setSiteTimeout(Duration siteTimeout) {
+        if (siteTimeout.isNegative() || siteTimeout.isZero()) {
+            throw new IllegalArgumentException("siteTimeout должен быть больше 0");
+        }
+        this.siteTimeout = siteTimeout;
+    }
+
+    public void setMaxLemmaFrequency(double maxLemmaFrequency) {
+        if (maxLemmaFrequency <= 0 || maxLemmaFrequency > 1) {
+            throw new IllegalArgumentException("maxLemmaFrequency должен быть больше 0 и не больше 1");
+        }
+        this.maxLemmaFrequency = maxLemmaFrequency;
+    }
+
+    public void setSuggestSize(int suggestSize) {
+        if (suggestSize < 1) {
+            throw new IllegalArgumentException("suggestSize не может быть меньше 1");
+        }
+        this.suggestSize = suggestSize;
+    }
+
+    public void setSuggestRefreshInterval(long suggestRefreshInterval) {
+        if (suggestRefreshInterval < 1) {
+            throw new IllegalArgumentException("suggestRefreshInterval должен быть больше 0");
+        }
+        this.suggestRefreshInterval = suggestRefreshInterval;
+    }
+
+    public void setFuzzyMaxDistance(int fuzzyMaxDistance) {
+        if (fuzzyMaxDistance < 1 || fuzzyMaxDistance > 3) {
+            throw new IllegalArgumentException("fuzzyMaxDistance должен быть от 1 до 3");
+        }
+        this.fuzzyMaxDistance = fuzzyMaxDistance;
+    }
+
+    public void setBatchSize(int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize не может быть меньше 1");
+        }
+        this.batchSize = batchSize;
+    }
+
+    public void setTimeout(Duration timeout) {
+        if (timeout.isNegative() || timeout.isZero()) {
+            throw new IllegalArgumentException("timeout должен быть больше 0");
+        }
+        this.timeout = timeout;
+    }
 }
@@ -0,0 +1,14 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+@Setter
+@Getter
+public class Shard {
+    private String url; // Адрес экземпляра без "/" на конце, например http://localhost:8081
+    private List<String> sites = new ArrayList<>(); // Адреса сайтов, которые индексирует экземпляр
+}
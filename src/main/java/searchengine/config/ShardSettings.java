@@ -0,0 +1,46 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "shard-settings")
+public class ShardSettings {
+    List<Shard> shards = new ArrayList<>(); // Экземпляры, которым координатор пересылает поисковые запросы
+    Duration connectTimeout = Duration.ofSeconds(1); // Ожидание соединения с экземпляром
+    Duration networkReserve = Duration.ofMillis(200); // Часть времени запроса на передачу ответа экземпляра
+
+    public void setShards(List<Shard> shards) {
+        for (var shard : shards) {
+            if (shard.getUrl() == null || shard.getUrl().isBlank()) {
+                throw new IllegalArgumentException("Не задан адрес экземпляра в shards");
+            }
+            if (shard.getSites().isEmpty()) {
+                throw new IllegalArgumentException("Не заданы сайты экземпляра " + shard.getUrl());
+            }
+        }
+        this.shards = shards;
+    }
+
+    public void setConnectTimeout(Duration connectTimeout) {
+        if (connectTimeout.isNegative() || connectTimeout.isZero()) {
+            throw new IllegalArgumentException("connectTimeout должен быть больше 0");
+        }
+        this.connectTimeout = connectTimeout;
+    }
+
+    public void setNetworkReserve(Duration networkReserve) {
+        if (networkReserve.isNegative()) {
+            throw new IllegalArgumentException("networkReserve не может быть отрицательным");
+        }
+        this.networkReserve = networkReserve;
+    }
+}
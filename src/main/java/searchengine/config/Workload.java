@@ -0,0 +1,41 @@
+package searchengine.config;
+
+/**
+ * Вид нагрузки потока. От него зависит пул соединений с базой данных ({@link DataSourceConfig}): индексация и поиск
+ * используют разные пулы, поэтому обход сайтов не занимает соединения поисковых запросов.
+ */
+public enum Workload {
+    /**
+     * Запросы API, поиск и фоновые задачи. Вид по умолчанию.
+     */
+    SEARCH,
+    /**
+     * Обход сайтов и индексация страниц: потоки crawlerPool и indexingExecutor
+     */
+    INDEXING;
+
+    private static final ThreadLocal<Workload> CURRENT = new ThreadLocal<>();
+
+    public static Workload current() {
+        var workload = CURRENT.get();
+        return workload == null ? SEARCH : workload;
+    }
+
+    // Задача, выполняемая с этим видом нагрузки
+    public Runnable wrap(Runnable task) {
+        return () -> {
+            var previous = CURRENT.get();
+            CURRENT.set(this);
+            try {
+                task.run();
+            } finally {
+                CURRENT.set(previous);
+            }
+        };
+    }
+
+    // Для потоков пула, которые выполняют задачи только этого вида нагрузки
+    void assignToCurrentThread() {
+        CURRENT.set(this);
+    }
+}
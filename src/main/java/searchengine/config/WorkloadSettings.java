@@ -0,0 +1,46 @@
+package searchengine.config;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.stereotype.Component;
+
+@Getter
+@Setter
+@Component
+@ConfigurationProperties(prefix = "workload-settings")
+public class WorkloadSettings {
+    int searchConnections = 10; // Размер пула соединений запросов API и поиска
+    int indexingConnections = 10; // Размер пула соединений обхода сайтов и индексации
+    int crawlerParallelism = Runtime.getRuntime().availableProcessors(); // Потоки обхода сайтов
+    int indexingThreads = 4; // Потоки запуска, остановки индексации и индексации отдельных страниц
+
+    public void setSearchConnections(int searchConnections) {
+        if (searchConnections < 1) {
+            throw new IllegalArgumentException("searchConnections не может быть меньше 1");
+        }
+        this.searchConnections = searchConnections;
+    }
+
+    public void setIndexingConnections(int indexingConnections) {
+        if (indexingConnections < 1) {
+            throw new IllegalArgumentException("indexingConnections не может быть меньше 1");
+        }
+        this.indexingConnections = indexingConnections;
+    }
+
+    public void setCrawlerParallelism(int crawlerParallelism) {
+        if (crawlerParallelism < 1) {
+            throw new IllegalArgumentException("crawlerParallelism не может быть меньше 1");
+        }
+        this.crawlerParallelism = crawlerParallelism;
+    }
+
+    public void setIndexingThreads(int indexingThreads) {
+        // Поток остановки ожидает поток полной индексации
+        if (indexingThreads < 2) {
+            throw new IllegalArgumentException("indexingThreads не может быть меньше 2");
+        }
+        this.indexingThreads = indexingThreads;
+    }
+}
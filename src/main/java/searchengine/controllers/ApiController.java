@@ -1,15 +1,27 @@
 package searchengine.controllers;
 
 import lombok.RequiredArgsConstructor;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import searchengine.dto.indexing.IndexPageRequest;
 import searchengine.dto.indexing.IndexingResponse;
+import searchengine.dto.search.BatchSearchRequest;
+import searchengine.dto.search.BatchSearchResponse;
+import searchengine.dto.search.SearchQuery;
 import searchengine.dto.search.SearchResponse;
+import searchengine.dto.search.SuggestResponse;
 import searchengine.dto.statistics.StatisticsResponse;
+import searchengine.services.AdmissionControl;
+import searchengine.services.AdmissionLimiter;
 import searchengine.services.IndexingService;
 import searchengine.services.SearchService;
 import searchengine.services.StatisticsService;
+import searchengine.services.SuggestService;
+
+import java.time.Duration;
+import java.util.List;
 
 @RequiredArgsConstructor
 @RestController
@@ -19,6 +31,8 @@ public class ApiController {
     private final StatisticsService statisticsService;
     private final IndexingService indexingService;
     private final SearchService searchService;
+    private final SuggestService suggestService;
+    private final AdmissionControl admissionControl;
 
     @GetMapping("/statistics")
     public ResponseEntity<StatisticsResponse> statistics() {
@@ -27,7 +41,13 @@ public class ApiController {
 
     @GetMapping({"/startIndexing", "/startindexing"})
     public ResponseEntity<IndexingResponse> startIndexing() {
-        var response = indexingService.startIndexing();
+        IndexingResponse response;
+        try (var permit = admissionControl.acquireIndexing()) {
+            if (!permit.isAdmitted()) {
+                return reject(permit, createIndexingRejection());
+            }
+            response = indexingService.startIndexing();
+        }
 
         if (!response.isResult()) {
             return ResponseEntity
@@ -40,7 +60,13 @@ public class ApiController {
 
     @GetMapping({"/stopIndexing", "/stopindexing"})
     public ResponseEntity<IndexingResponse> stopIndexing() {
-        var response = indexingService.stopIndexing();
+        IndexingResponse response;
+        try (var permit = admissionControl.acquireIndexing()) {
+            if (!permit.isAdmitted()) {
+                return reject(permit, createIndexingRejection());
+            }
+            response = indexingService.stopIndexing();
+        }
 
         if (!response.isResult()) {
             return ResponseEntity
@@ -56,7 +82,13 @@ public class ApiController {
     @PostMapping({"/indexPage", "/indexpage"})
     public ResponseEntity<IndexingResponse> indexPage(IndexPageRequest body) {
         var url = body.getUrl();
-        var response = indexingService.indexPage(url);
+        IndexingResponse response;
+        try (var permit = admissionControl.acquireIndexing()) {
+            if (!permit.isAdmitted()) {
+                return reject(permit, createIndexingRejection());
+            }
+            response = indexingService.indexPage(url);
+        }
 
         if (!response.isResult()) {
             return ResponseEntity
@@ -71,7 +103,12 @@ public class ApiController {
     public ResponseEntity<SearchResponse> search(String query,
                                                  @RequestParam(required = false) String site,
                                                  @RequestParam(required = false) Integer offset,
-                                                 @RequestParam(required = false) Integer limit) {
+                                                 @RequestParam(required = false) Integer limit,
+                                                 @RequestParam(required = false) String cursor,
+                                                 @RequestParam(required = false) Long timeoutMs,
+                                                 @RequestParam(required = false) Boolean fuzzy) {
+        // Время поиска отсчитывается от получения запроса, в том числе в очереди допуска
+        var receivedAt = System.nanoTime();
         SearchResponse response;
 
         if (offset == null) {
@@ -80,12 +117,73 @@ public class ApiController {
         if (limit == null) {
             limit = 20;
         }
+        // Без параметра используется search-settings.timeout
+        var timeout = timeoutMs == null ? null : Duration.ofMillis(timeoutMs);
+        // Исправление опечаток выполняется только по запросу
+        var fuzzySearch = Boolean.TRUE.equals(fuzzy);
+
+        try (var permit = admissionControl.acquireSearch()) {
+            if (!permit.isAdmitted()) {
+                return reject(permit, createSearchRejection());
+            }
+
+            var allSites = site == null || site.isBlank();
+            if (allSites) {
+                response = searchService.searchAllSites(query, limit, offset, cursor, timeout, fuzzySearch,
+                        receivedAt);
+            } else {
+                response = searchService.searchSite(site, query, limit, offset, cursor, timeout, fuzzySearch,
+                        receivedAt);
+            }
+        }
+
+        if (!response.isResult()) {
+            return ResponseEntity
+                    .badRequest()
+                    .body(response);
+        }
+
+        return ResponseEntity.ok(response);
+    }
+
+    @PostMapping("/search/batch")
+    public ResponseEntity<BatchSearchResponse> searchBatch(@RequestBody BatchSearchRequest request) {
+        var receivedAt = System.nanoTime();
+        var queries = request.getQueries() == null ? List.<SearchQuery>of() : request.getQueries();
+        var timeout = request.getTimeoutMs() == null ? null : Duration.ofMillis(request.getTimeoutMs());
+        BatchSearchResponse response;
+        try (var permit = admissionControl.acquireSearch()) {
+            if (!permit.isAdmitted()) {
+                var error = createSearchRejection().getError();
+                return reject(permit, BatchSearchResponse.builder().result(false).error(error).build());
+            }
+            response = searchService.searchBatch(queries, timeout, receivedAt);
+        }
+
+        if (!response.isResult()) {
+            return ResponseEntity
+                    .badRequest()
+                    .body(response);
+        }
+
+        return ResponseEntity.ok(response);
+    }
+
+    @GetMapping("/suggest")
+    public ResponseEntity<SuggestResponse> suggest(String query,
+                                                   @RequestParam(required = false) String site,
+                                                   @RequestParam(required = false) Integer limit) {
+        SuggestResponse response;
+
+        if (limit == null) {
+            limit = 10;
+        }
 
         var allSites = site == null || site.isBlank();
         if (allSites) {
-            response = searchService.searchAllSites(query, limit, offset);
+            response = suggestService.suggestAllSites(query, limit);
         } else {
-            response = searchService.searchSite(site, query, limit, offset);
+            response = suggestService.suggestSite(site, query, limit);
         }
 
         if (!response.isResult()) {
@@ -96,4 +194,25 @@ public class ApiController {
 
         return ResponseEntity.ok(response);
     }
+
+    // Запрос отклонён ограничением одновременных запросов: 429, если очередь ожидания заполнена, 503, если место не
+    // освободилось за время ожидания
+    private static <T> ResponseEntity<T> reject(AdmissionLimiter.Permit permit, T body) {
+        var status = permit.rejection() == AdmissionLimiter.Rejection.QUEUE_FULL
+                ? HttpStatus.TOO_MANY_REQUESTS : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity
+                .status(status)
+                .header(HttpHeaders.RETRY_AFTER, "1")
+                .body(body);
+    }
+
+    private static SearchResponse createSearchRejection() {
+        return SearchResponse.builder().result(false)
+                .error("Слишком много одновременных поисковых запросов, повторите запрос позже").build();
+    }
+
+    private static IndexingResponse createIndexingRejection() {
+        return IndexingResponse.builder().result(false)
+                .error("Слишком много одновременных запросов индексации, повторите запрос позже").build();
+    }
 }
@@ -13,7 +13,12 @@ import org.springframework.stereotype.Component;
 import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.SearchBot;
 import searchengine.model.*;
+import searchengine.services.ContentStore;
+import searchengine.services.IndexGenerations;
 import searchengine.services.LemmasFinder;
+import searchengine.services.PostingsStore;
+import searchengine.services.SearchIndex;
+import searchengine.services.SegmentStore;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -36,6 +41,11 @@ public class PageAnalyzer extends RecursiveAction {
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final PostingsStore postingsStore;
+    private final SegmentStore segmentStore;
+    private final ContentStore contentStore;
+    private final SearchIndex searchIndex;
+    private final IndexGenerations indexGenerations;
 
     private final Random random = new Random();
     private Page page;
@@ -210,8 +220,12 @@ public class PageAnalyzer extends RecursiveAction {
 
             try {
                 saveLemmatizationChanges(deletingLemmas, changedLemmas, deletingIndexes, changedIndexes);
+                searchIndex.updatePage(page, lemmas);
             } catch (Exception e) {
                 saveError(site, e);
+            } finally {
+                // Изменились содержимое страницы и, возможно, часть индексов
+                indexGenerations.increment(site);
             }
 
         }
@@ -253,6 +267,7 @@ public class PageAnalyzer extends RecursiveAction {
         page.setCode(statusCode);
         page.setContent(html);
         savePage(page);
+        saveContent(page);
 
         updateSite();
 
@@ -392,6 +407,8 @@ public class PageAnalyzer extends RecursiveAction {
             lemmaRepository.deleteAll(deletingLemmas);
             lemmaRepository.saveAll(savingLemmas);
             indexRepository.saveAll(savingIndexes);
+            postingsStore.append(deletingIndexes, savingIndexes);
+            segmentStore.append(deletingIndexes, savingIndexes);
         }
     }
 
@@ -495,6 +512,16 @@ public class PageAnalyzer extends RecursiveAction {
         }
     }
 
+    private void saveContent(Page page) {
+        try {
+            contentStore.save(page, page.getContent());
+        } catch (Exception e) {
+            var error = page.getPath().concat(": ").concat(e.getLocalizedMessage());
+            saveError(page.getSite(), error);
+            throw e;
+        }
+    }
+
     private void updateSite(Site site) {
         site.setStatusTime(LocalDateTime.now());
         saveSite(site);
@@ -0,0 +1,11 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+import java.util.List;
+
+@Data
+public class BatchSearchRequest {
+    private List<SearchQuery> queries;
+    private Long timeoutMs; // Время на весь пакет. Без параметра используется search-settings.timeout
+}
@@ -0,0 +1,21 @@
+package searchengine.dto.search;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class BatchSearchResponse {
+    private boolean result;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<SearchResponse> responses; // Ответы в порядке запросов пакета
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+}
@@ -0,0 +1,76 @@
+package searchengine.dto.search;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Курсор постраничного вывода: позиция последнего выведенного результата. Следующая страница начинается с результатов
+ * хуже последнего (по убыванию релевантности, затем по возрастанию идентификатора страницы), поэтому не требует
+ * отбора всех предыдущих результатов.
+ *
+ * @param queryHash     хеш лемм запроса и сайтов поиска - для проверки, что курсор относится к тому же запросу
+ * @param lastRelevance абсолютная релевантность последнего выведенного результата
+ * @param lastPageId    идентификатор страницы последнего выведенного результата
+ * @param maxRelevance  абсолютная релевантность первого результата - для нормирования
+ * @param count         общее количество найденных страниц
+ * @param position      сколько результатов уже выведено
+ * @param generations   номера поколений индексов сайтов поиска на момент первой страницы
+ */
+public record SearchCursor(int queryHash, double lastRelevance, int lastPageId, double maxRelevance, int count,
+                           int position, long[] generations) {
+
+    private static final byte VERSION = 1;
+
+    /**
+     * @return непрозрачная для клиента строка курсора
+     */
+    public String encode() {
+        var buffer = ByteBuffer.allocate(1 + 4 + 8 + 4 + 8 + 4 + 4 + 2 + 8 * generations.length)
+                .put(VERSION)
+                .putInt(queryHash)
+                .putDouble(lastRelevance)
+                .putInt(lastPageId)
+                .putDouble(maxRelevance)
+                .putInt(count)
+                .putInt(position)
+                .putShort((short) generations.length);
+        for (var generation : generations) {
+            buffer.putLong(generation);
+        }
+
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @param value строка курсора
+     * @return курсор
+     * @throws IllegalArgumentException если строка не является курсором
+     */
+    public static SearchCursor decode(String value) {
+        try {
+            var buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(value));
+            if (buffer.get() != VERSION) {
+                throw new IllegalArgumentException("Неподдерживаемая версия курсора");
+            }
+
+            var queryHash = buffer.getInt();
+            var lastRelevance = buffer.getDouble();
+            var lastPageId = buffer.getInt();
+            var maxRelevance = buffer.getDouble();
+            var count = buffer.getInt();
+            var position = buffer.getInt();
+            var generations = new long[buffer.getShort()];
+            for (var i = 0; i < generations.length; i++) {
+                generations[i] = buffer.getLong();
+            }
+            if (buffer.hasRemaining() || count < 0 || position < 0) {
+                throw new IllegalArgumentException("Некорректный курсор");
+            }
+
+            return new SearchCursor(queryHash, lastRelevance, lastPageId, maxRelevance, count, position, generations);
+        } catch (BufferUnderflowException | NegativeArraySizeException e) {
+            throw new IllegalArgumentException("Некорректный курсор", e);
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package searchengine.dto.search;
+
+import lombok.Data;
+
+/**
+ * Запрос пакетного поиска. Параметры и значения по умолчанию - как у GET /api/search.
+ */
+@Data
+public class SearchQuery {
+    private String query;
+    private String site; // Без сайта - поиск по всем сайтам
+    private int offset = 0;
+    private int limit = 20;
+    private String cursor;
+    private boolean fuzzy;
+}
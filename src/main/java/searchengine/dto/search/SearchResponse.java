@@ -7,9 +7,10 @@ import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.util.List;
+import java.util.Map;
 
 @Data
-@Builder
+@Builder(toBuilder = true)
 @NoArgsConstructor
 @AllArgsConstructor
 public class SearchResponse {
@@ -19,5 +20,15 @@ public class SearchResponse {
     @JsonInclude(JsonInclude.Include.NON_NULL)
     private List<SearchData> data;
     @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String cursor; // Курсор следующей страницы результатов, если она есть
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean partial; // true - часть сайтов не обработана за отведённое время
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> prunedLemmas; // Слишком частые леммы запроса, исключённые из поиска
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Map<String, String> corrections; // Исправленные опечатки: лемма запроса -> лемма, по которой выполнен поиск
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Double maxRelevance; // Абсолютная релевантность первого результата - для слияния ответов экземпляров
+    @JsonInclude(JsonInclude.Include.NON_NULL)
     private String error;
 }
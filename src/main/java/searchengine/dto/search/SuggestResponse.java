@@ -0,0 +1,21 @@
+package searchengine.dto.search;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class SuggestResponse {
+    private boolean result;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private List<String> suggestions; // Запрос с дополненным последним словом, по убыванию частоты леммы
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private String error;
+}
@@ -0,0 +1,41 @@
+package searchengine.index;
+
+import java.time.Duration;
+
+/**
+ * Момент, после которого расчёт нужно прекратить и вернуть то, что уже найдено
+ */
+public final class Deadline {
+
+    public static final Deadline NONE = new Deadline(0, false);
+
+    private final long expiresAt; // По System.nanoTime()
+    private final boolean limited;
+
+    private Deadline(long expiresAt, boolean limited) {
+        this.expiresAt = expiresAt;
+        this.limited = limited;
+    }
+
+    public static Deadline after(Duration timeout) {
+        return after(System.nanoTime(), timeout);
+    }
+
+    /**
+     * @param start начало отсчёта (System.nanoTime), например время получения запроса
+     */
+    public static Deadline after(long start, Duration timeout) {
+        return new Deadline(start + timeout.toNanos(), true);
+    }
+
+    public boolean isExpired() {
+        return limited && System.nanoTime() - expiresAt >= 0;
+    }
+
+    /**
+     * @return оставшееся время в наносекундах (не меньше 0) или Long.MAX_VALUE, если время не ограничено
+     */
+    public long remainingNanos() {
+        return limited ? Math.max(expiresAt - System.nanoTime(), 0) : Long.MAX_VALUE;
+    }
+}
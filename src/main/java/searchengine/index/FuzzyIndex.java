@@ -0,0 +1,237 @@
+package searchengine.index;
+
+import java.util.*;
+
+/**
+ * Исправление опечаток по словарю лемм сайта (алгоритм SymSpell). Для каждой леммы заранее перечислены все строки,
+ * получаемые удалением до maxDistance символов. У слова с опечаткой и у подходящей леммы есть общая такая строка,
+ * поэтому при запросе перечисляются удаления только самого слова, а расстояние проверяется у немногих найденных лемм.
+ * <p>
+ * Удаления строятся по первым PREFIX_LENGTH символам: от длины лемм зависит только проверка кандидатов. Хранятся не
+ * строки, а их хеши вместе с номерами лемм, упорядоченные для двоичного поиска. Совпадения хешей отсеивает проверка
+ * расстояния. Словарь неизменяемый: после изменения лемм сайта он строится заново.
+ */
+public class FuzzyIndex {
+
+    private static final int PREFIX_LENGTH = 7;
+
+    private final String[] lemmas;
+    private final int[] frequencies;
+    private final int maxDistance;
+    private final long[] deletes; // Хеш удаления в старших 32 битах, номер леммы - в младших
+
+    /**
+     * @param frequencies соответствие леммы и её частоты
+     * @param maxDistance наибольшее расстояние между словом и леммой (вставка, удаление, замена, перестановка соседних
+     *                    символов)
+     */
+    public FuzzyIndex(Map<String, Integer> frequencies, int maxDistance) {
+        if (maxDistance < 1) {
+            throw new IllegalArgumentException("Расстояние не может быть меньше 1");
+        }
+
+        this.maxDistance = maxDistance;
+        lemmas = frequencies.keySet().toArray(new String[0]);
+        this.frequencies = new int[lemmas.length];
+
+        var entries = new long[Math.max(lemmas.length * 8, 16)];
+        var size = 0;
+        for (var i = 0; i < lemmas.length; i++) {
+            this.frequencies[i] = frequencies.get(lemmas[i]);
+            for (var delete : getDeletes(lemmas[i], maxDistance)) {
+                if (size == entries.length) {
+                    entries = Arrays.copyOf(entries, size + (size >> 1));
+                }
+                entries[size++] = pack(delete.hashCode(), i);
+            }
+        }
+
+        deletes = Arrays.copyOf(entries, size);
+        Arrays.sort(deletes);
+    }
+
+    public int lemmasCount() {
+        return lemmas.length;
+    }
+
+    public int deletesCount() {
+        return deletes.length;
+    }
+
+    public boolean contains(String word) {
+        // Начало леммы (удаление 0 символов) есть среди её удалений
+        var hash = getPrefix(word).hashCode();
+        for (var i = lowerBound(pack(hash, 0)); i < deletes.length && hash(deletes[i]) == hash; i++) {
+            if (lemmas[lemma(deletes[i])].equals(word)) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    /**
+     * Ближайшая к слову лемма. Допустимое расстояние зависит от длины слова: в коротких словах одна-две правки дают
+     * совсем другое слово.
+     *
+     * @param word слово в нижнем регистре
+     * @return лемма с наименьшим расстоянием, при равном расстоянии - с наибольшей частотой, или null, если подходящей
+     * леммы нет
+     */
+    public Correction correct(String word) {
+        var distanceLimit = getDistanceLimit(word);
+        if (distanceLimit == 0) {
+            return null;
+        }
+
+        Correction best = null;
+        var checked = new HashSet<Integer>();
+        for (var delete : getDeletes(word, distanceLimit)) {
+            var hash = delete.hashCode();
+            for (var i = lowerBound(pack(hash, 0)); i < deletes.length && hash(deletes[i]) == hash; i++) {
+                var lemma = lemma(deletes[i]);
+                if (!checked.add(lemma)) {
+                    continue;
+                }
+
+                var limit = best == null ? distanceLimit : best.distance();
+                var distance = distance(word, lemmas[lemma], limit);
+                if (distance > limit) {
+                    continue;
+                }
+                var candidate = new Correction(lemmas[lemma], distance, frequencies[lemma]);
+                if (best == null || candidate.isBetterThan(best)) {
+                    best = candidate;
+                }
+            }
+        }
+
+        return best;
+    }
+
+    private int getDistanceLimit(String word) {
+        if (word.length() <= 2) {
+            return 0;
+        }
+        return word.length() <= 5 ? 1 : maxDistance;
+    }
+
+    // Строки, получаемые из начала слова удалением от 0 до distance символов
+    private static Set<String> getDeletes(String word, int distance) {
+        var prefix = getPrefix(word);
+        var result = new HashSet<String>();
+        result.add(prefix);
+
+        var current = List.of(prefix);
+        for (var step = 0; step < distance; step++) {
+            var next = new ArrayList<String>();
+            for (var value : current) {
+                for (var i = 0; i < value.length(); i++) {
+                    var delete = value.substring(0, i) + value.substring(i + 1);
+                    if (result.add(delete)) {
+                        next.add(delete);
+                    }
+                }
+            }
+            current = next;
+        }
+
+        return result;
+    }
+
+    private static String getPrefix(String word) {
+        return word.length() > PREFIX_LENGTH ? word.substring(0, PREFIX_LENGTH) : word;
+    }
+
+    /**
+     * Расстояние Дамерау-Левенштейна (без повторного редактирования подстрок) с отсечением
+     *
+     * @return расстояние или limit + 1, если оно больше limit
+     */
+    static int distance(String first, String second, int limit) {
+        if (Math.abs(first.length() - second.length()) > limit) {
+            return limit + 1;
+        }
+
+        var beforePreviousRow = new int[second.length() + 1]; // Для перестановки соседних символов
+        var previousRow = new int[second.length() + 1];
+        var row = new int[second.length() + 1];
+        for (var j = 0; j <= second.length(); j++) {
+            row[j] = j;
+        }
+        if (first.isEmpty()) {
+            return Math.min(second.length(), limit + 1);
+        }
+
+        for (var i = 1; i <= first.length(); i++) {
+            var reused = beforePreviousRow;
+            beforePreviousRow = previousRow;
+            previousRow = row;
+            row = reused;
+
+            row[0] = i;
+            var rowMin = i;
+            for (var j = 1; j <= second.length(); j++) {
+                var cost = first.charAt(i - 1) == second.charAt(j - 1) ? 0 : 1;
+                var value = Math.min(Math.min(previousRow[j] + 1, row[j - 1] + 1), previousRow[j - 1] + cost);
+                if (i > 1 && j > 1 && first.charAt(i - 1) == second.charAt(j - 2)
+                        && first.charAt(i - 2) == second.charAt(j - 1)) {
+                    value = Math.min(value, beforePreviousRow[j - 2] + 1);
+                }
+                row[j] = value;
+                rowMin = Math.min(rowMin, value);
+            }
+
+            if (rowMin > limit) {
+                return limit + 1;
+            }
+        }
+
+        return Math.min(row[second.length()], limit + 1);
+    }
+
+    private int lowerBound(long key) {
+        var low = 0;
+        var high = deletes.length;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (deletes[middle] < key) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    private static long pack(int hash, int lemma) {
+        return (long) hash << 32 | lemma;
+    }
+
+    private static int hash(long entry) {
+        return (int) (entry >> 32);
+    }
+
+    private static int lemma(long entry) {
+        return (int) entry;
+    }
+
+    /**
+     * @param lemma     найденная лемма
+     * @param distance  расстояние от слова до леммы
+     * @param frequency количество страниц сайта, на которых встречается лемма
+     */
+    public record Correction(String lemma, int distance, int frequency) {
+
+        public boolean isBetterThan(Correction other) {
+            if (distance != other.distance) {
+                return distance < other.distance;
+            }
+            if (frequency != other.frequency) {
+                return frequency > other.frequency;
+            }
+            return lemma.compareTo(other.lemma) < 0;
+        }
+    }
+}
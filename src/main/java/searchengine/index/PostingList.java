@@ -0,0 +1,239 @@
+package searchengine.index;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SortedMap;
+
+/**
+ * Список вхождений леммы: идентификаторы страниц по возрастанию и ранги леммы на этих страницах (параллельные массивы).
+ * Список можно изменять методами {@link #put} и {@link #remove}. Синхронизация изменений и чтения - на стороне владельца
+ * списка.
+ */
+public class PostingList {
+
+    private static final int[] EMPTY_PAGE_IDS = new int[0];
+    private static final float[] EMPTY_RANKS = new float[0];
+
+    private int[] pageIds;
+    private float[] ranks;
+    private int size;
+    private float maxRank; // Верхняя граница рангов: после удаления вхождений может быть больше фактического максимума
+
+    /**
+     * @param pageIds идентификаторы страниц по возрастанию. Массив не копируется.
+     * @param ranks   ранги в том же порядке. Массив не копируется.
+     * @param size    количество заполненных элементов массивов
+     */
+    public PostingList(int[] pageIds, float[] ranks, int size) {
+        if (pageIds.length < size || ranks.length < size) {
+            throw new IllegalArgumentException("Размер списка вхождений больше размера массивов");
+        }
+        this.pageIds = pageIds;
+        this.ranks = ranks;
+        this.size = size;
+        for (var i = 0; i < size; i++) {
+            maxRank = Math.max(maxRank, ranks[i]);
+        }
+    }
+
+    public static PostingList empty() {
+        return new PostingList(EMPTY_PAGE_IDS, EMPTY_RANKS, 0);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Размер выделенных массивов (для оценки занимаемой памяти)
+    public int capacity() {
+        return pageIds.length;
+    }
+
+    public int pageId(int index) {
+        return pageIds[index];
+    }
+
+    public float rank(int index) {
+        return ranks[index];
+    }
+
+    /**
+     * Верхняя граница ранга леммы на любой странице списка. Используется для отсечения страниц, которые заведомо не
+     * попадут в число самых релевантных.
+     */
+    public float maxRank() {
+        return maxRank;
+    }
+
+    /**
+     * Двоичный поиск страницы
+     *
+     * @param pageId идентификатор страницы
+     * @return позиция страницы в списке или (-(позиция вставки) - 1), если страницы в списке нет
+     */
+    public int indexOf(int pageId) {
+        return Arrays.binarySearch(pageIds, 0, size, pageId);
+    }
+
+    /**
+     * Экспоненциальный (галопирующий) поиск вперёд: шаг удваивается, пока не будет пройдена искомая страница, затем
+     * выполняется двоичный поиск внутри последнего шага. Стоимость - O(log d), где d - расстояние до найденной позиции,
+     * поэтому при пересечении короткого списка с длинным большая часть длинного списка пропускается.
+     *
+     * @param from   позиция, с которой начинается поиск
+     * @param pageId идентификатор страницы
+     * @return позиция первой страницы с идентификатором не меньше pageId или size(), если таких нет
+     */
+    public int seek(int from, int pageId) {
+        if (from >= size || pageIds[from] >= pageId) {
+            return from;
+        }
+
+        // pageIds[low] < pageId
+        var low = from;
+        var step = 1;
+        while (low + step < size && pageIds[low + step] < pageId) {
+            low += step;
+            step <<= 1;
+        }
+
+        var high = Math.min(low + step, size);
+        var index = Arrays.binarySearch(pageIds, low + 1, high, pageId);
+        return index >= 0 ? index : -index - 1;
+    }
+
+    /**
+     * Добавляет вхождение или заменяет ранг существующего. Добавление в конец (страницы индексируются по возрастанию
+     * идентификаторов) не требует сдвига элементов.
+     */
+    public void put(int pageId, float rank) {
+        maxRank = Math.max(maxRank, rank);
+        var index = size > 0 && pageIds[size - 1] < pageId ? -size - 1 : indexOf(pageId);
+        if (index >= 0) {
+            ranks[index] = rank;
+            return;
+        }
+
+        index = -index - 1;
+        if (size == pageIds.length) {
+            var capacity = Math.max(size + (size >> 1), 4);
+            pageIds = Arrays.copyOf(pageIds, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+        }
+
+        System.arraycopy(pageIds, index, pageIds, index + 1, size - index);
+        System.arraycopy(ranks, index, ranks, index + 1, size - index);
+        pageIds[index] = pageId;
+        ranks[index] = rank;
+        size++;
+    }
+
+    /**
+     * Удаляет вхождение страницы
+     *
+     * @return было ли вхождение в списке
+     */
+    public boolean remove(int pageId) {
+        var index = indexOf(pageId);
+        if (index < 0) {
+            return false;
+        }
+
+        System.arraycopy(pageIds, index + 1, pageIds, index, size - index - 1);
+        System.arraycopy(ranks, index + 1, ranks, index, size - index - 1);
+        size--;
+
+        return true;
+    }
+
+    /**
+     * Возвращает новый список с применёнными изменениями. Текущий список не изменяется.
+     *
+     * @param changes изменения по идентификаторам страниц: ранг для добавления или замены, null - для удаления
+     * @return список вхождений с изменениями
+     */
+    public PostingList merge(SortedMap<Integer, Float> changes) {
+        if (changes.isEmpty()) {
+            return this;
+        }
+
+        var newSize = size + changes.size(); // Верхняя граница
+        var newPageIds = new int[newSize];
+        var newRanks = new float[newSize];
+        var count = 0;
+        var i = 0;
+
+        for (Map.Entry<Integer, Float> change : changes.entrySet()) {
+            int changedPageId = change.getKey();
+
+            while (i < size && pageIds[i] < changedPageId) {
+                newPageIds[count] = pageIds[i];
+                newRanks[count++] = ranks[i++];
+            }
+            if (i < size && pageIds[i] == changedPageId) {
+                i++; // Старое значение заменяется или удаляется
+            }
+
+            var rank = change.getValue();
+            if (rank != null) {
+                newPageIds[count] = changedPageId;
+                newRanks[count++] = rank;
+            }
+        }
+
+        while (i < size) {
+            newPageIds[count] = pageIds[i];
+            newRanks[count++] = ranks[i++];
+        }
+
+        return new PostingList(newPageIds, newRanks, count);
+    }
+
+    /**
+     * Возвращает новый список с применёнными изменениями более нового списка. Текущий список не изменяется.
+     *
+     * @param added   добавленные вхождения и вхождения с изменённым рангом
+     * @param removed идентификаторы страниц удалённых вхождений по возрастанию
+     * @return список вхождений с изменениями
+     */
+    public PostingList merge(PostingList added, int[] removed) {
+        if (added.isEmpty() && removed.length == 0) {
+            return this;
+        }
+
+        var newSize = size + added.size; // Верхняя граница
+        var newPageIds = new int[newSize];
+        var newRanks = new float[newSize];
+        var count = 0;
+        var j = 0;
+        var k = 0;
+
+        for (var i = 0; i < size; i++) {
+            var pageId = pageIds[i];
+            while (j < added.size && added.pageIds[j] < pageId) {
+                newPageIds[count] = added.pageIds[j];
+                newRanks[count++] = added.ranks[j++];
+            }
+            while (k < removed.length && removed[k] < pageId) {
+                k++;
+            }
+            if (j < added.size && added.pageIds[j] == pageId || k < removed.length && removed[k] == pageId) {
+                continue; // Старое значение заменяется или удаляется
+            }
+
+            newPageIds[count] = pageId;
+            newRanks[count++] = ranks[i];
+        }
+
+        while (j < added.size) {
+            newPageIds[count] = added.pageIds[j];
+            newRanks[count++] = added.ranks[j++];
+        }
+
+        return new PostingList(newPageIds, newRanks, count);
+    }
+}
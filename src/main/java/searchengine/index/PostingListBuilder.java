@@ -0,0 +1,58 @@
+package searchengine.index;
+
+import java.util.Arrays;
+
+/**
+ * Последовательное заполнение списка вхождений. Идентификаторы страниц должны добавляться по возрастанию.
+ */
+public class PostingListBuilder {
+
+    private int[] pageIds;
+    private float[] ranks;
+    private int size;
+
+    public PostingListBuilder() {
+        this(16);
+    }
+
+    public PostingListBuilder(int capacity) {
+        capacity = Math.max(capacity, 1);
+        pageIds = new int[capacity];
+        ranks = new float[capacity];
+    }
+
+    public PostingListBuilder add(int pageId, float rank) {
+        if (size > 0 && pageIds[size - 1] >= pageId) {
+            throw new IllegalArgumentException("Страницы должны добавляться по возрастанию идентификаторов");
+        }
+
+        if (size == pageIds.length) {
+            var capacity = size + (size >> 1) + 1;
+            pageIds = Arrays.copyOf(pageIds, capacity);
+            ranks = Arrays.copyOf(ranks, capacity);
+        }
+
+        pageIds[size] = pageId;
+        ranks[size++] = rank;
+
+        return this;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Формирует список вхождений. После вызова построитель можно использовать повторно - с пустым содержимым.
+     */
+    public PostingList build() {
+        if (size == 0) {
+            return PostingList.empty();
+        }
+
+        var postings = new PostingList(Arrays.copyOf(pageIds, size), Arrays.copyOf(ranks, size), size);
+        size = 0;
+
+        return postings;
+    }
+}
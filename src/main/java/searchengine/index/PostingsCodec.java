@@ -0,0 +1,76 @@
+package searchengine.index;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Сжатие списков вхождений. Формат: количество вхождений, затем для каждого вхождения разница с предыдущим
+ * идентификатором страницы и ранг. Все числа записываются кодом переменной длины (7 бит значения на байт, старший бит -
+ * признак продолжения), поэтому небольшие разности и ранги занимают один байт.
+ * <p>
+ * Ранг - количество упоминаний леммы на странице, т.е. целое неотрицательное число. Дробная часть не сохраняется.
+ */
+public final class PostingsCodec {
+
+    private PostingsCodec() {
+    }
+
+    public static byte[] encode(PostingList postings) {
+        var size = postings.size();
+        // Обычно хватает двух байт на вхождение
+        var output = new ByteArrayOutputStream(5 + size * 2);
+
+        writeVarInt(output, size);
+
+        var previousPageId = 0;
+        for (var i = 0; i < size; i++) {
+            var pageId = postings.pageId(i);
+            writeVarInt(output, pageId - previousPageId);
+            writeVarInt(output, Math.max(Math.round(postings.rank(i)), 0));
+            previousPageId = pageId;
+        }
+
+        return output.toByteArray();
+    }
+
+    public static PostingList decode(byte[] data) {
+        if (data == null || data.length == 0) {
+            return PostingList.empty();
+        }
+
+        var position = new int[]{0};
+        var size = readVarInt(data, position);
+        var pageIds = new int[size];
+        var ranks = new float[size];
+
+        var pageId = 0;
+        for (var i = 0; i < size; i++) {
+            pageId += readVarInt(data, position);
+            pageIds[i] = pageId;
+            ranks[i] = readVarInt(data, position);
+        }
+
+        return new PostingList(pageIds, ranks, size);
+    }
+
+    private static void writeVarInt(ByteArrayOutputStream output, int value) {
+        while ((value & ~0x7F) != 0) {
+            output.write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        output.write(value);
+    }
+
+    private static int readVarInt(byte[] data, int[] position) {
+        var value = 0;
+        var shift = 0;
+        byte b;
+
+        do {
+            b = data[position[0]++];
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+}
@@ -0,0 +1,83 @@
+package searchengine.index;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Пересечение списков вхождений лемм одного сайта: страницы, на которых встречаются все леммы, и сумма их рангов
+ */
+public final class PostingsIntersection {
+
+    private static final int DEADLINE_CHECK_MASK = 0x3FF; // Срок проверяется через каждые 1024 кандидата
+
+    private PostingsIntersection() {
+    }
+
+    /**
+     * Пересекает списки вхождений с суммированием рангов. Обход начинается с самого короткого списка, в остальных
+     * списках страницы-кандидаты ищутся галопирующим поиском от предыдущей позиции. Стоимость пересечения близка к
+     * размеру самого короткого списка, умноженному на логарифм расстояния между кандидатами в длинных списках.
+     * <p>
+     * Отсечение в духе MaxScore: верхняя граница релевантности кандидата - его ранг в самом коротком списке плюс
+     * сумма максимальных рангов остальных лемм. Если граница не позволяет кандидату попасть в число лучших, его ранги
+     * не суммируются и в кучу он не добавляется. Результат совпадает с полным расчётом. Поиск кандидата во всех
+     * списках при этом остаётся: без него нельзя получить точное количество найденных страниц. Поэтому отсечение
+     * экономит только суммирование рангов и работу с кучей, а не стоимость пересечения.
+     *
+     * @param postings списки вхождений всех лемм запроса
+     * @param result   куда добавляются найденные страницы и их абсолютная релевантность
+     * @param deadline срок расчёта. По его истечении или при прерывании потока (расчёт отменён) пересечение
+     *                 прекращается, а результат помечается неполным.
+     */
+    public static void intersect(List<PostingList> postings, TopRelevance result, Deadline deadline) {
+        if (postings.isEmpty()) {
+            return;
+        }
+
+        postings = postings.stream().sorted(Comparator.comparingInt(PostingList::size)).toList();
+        var rarest = postings.get(0);
+        var positions = new int[postings.size()];
+
+        var otherMaxRank = 0f;
+        for (var j = 1; j < postings.size(); j++) {
+            otherMaxRank += postings.get(j).maxRank();
+        }
+        // Ранги кандидата суммируются в другом порядке, чем граница: запас покрывает ошибку округления каждого сложения
+        var boundSlack = 1 + postings.size() * Math.ulp(1f);
+
+        candidates:
+        for (var i = 0; i < rarest.size(); i++) {
+            if ((i & DEADLINE_CHECK_MASK) == 0 && (deadline.isExpired() || Thread.currentThread().isInterrupted())) {
+                result.markPartial();
+                return;
+            }
+
+            var pageId = rarest.pageId(i);
+            var rank = rarest.rank(i);
+
+            var competitive = result.isCompetitive((rank + otherMaxRank) * boundSlack);
+
+            for (var j = 1; j < postings.size(); j++) {
+                var list = postings.get(j);
+                var position = list.seek(positions[j], pageId);
+                positions[j] = position;
+
+                if (position == list.size()) {
+                    break candidates;
+                }
+                if (list.pageId(position) != pageId) {
+                    continue candidates;
+                }
+                if (competitive) {
+                    rank += list.rank(position);
+                }
+            }
+
+            if (competitive) {
+                result.add(pageId, rank);
+            } else {
+                result.skip();
+            }
+        }
+    }
+}
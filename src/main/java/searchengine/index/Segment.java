@@ -0,0 +1,188 @@
+package searchengine.index;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Сегмент индекса - неизменяемый файл с изменениями списков вхождений лемм. Файл отображается в память
+ * (MappedByteBuffer): данные читаются из страничного кеша операционной системы без копирования файла в кучу, в куче
+ * создаются только прочитанные списки. Поэтому индекс может быть больше оперативной памяти.
+ * <p>
+ * Сегменты упорядочены по номерам: изменения более нового сегмента применяются к данным более старых. Для каждой леммы
+ * сегмент хранит добавленные вхождения, удалённые вхождения и признак очистки (лемма удалена, данные более старых
+ * сегментов не действуют).
+ * <p>
+ * Формат (числа заголовка, словаря и окончания - в порядке big-endian, данные лемм - кодом переменной длины, как в
+ * {@link PostingsCodec}):
+ * <pre>
+ * заголовок:  MAGIC, FORMAT_VERSION, наименьший номер (long), наибольший номер (long)
+ * данные:     для каждой леммы - признак очистки (байт), количество добавленных вхождений, для каждого разница с
+ *             предыдущим идентификатором страницы и ранг, количество удалённых вхождений, разницы идентификаторов
+ * словарь:    для каждой леммы по возрастанию идентификаторов - идентификатор (int) и смещение данных (long)
+ * окончание:  смещение словаря (long), количество лемм (int), MAGIC
+ * </pre>
+ * Сегмент, полученный слиянием, покрывает диапазон номеров слитых сегментов.
+ */
+public class Segment {
+
+    public static final String SUFFIX = ".seg";
+    public static final String TEMPORARY_SUFFIX = ".tmp";
+
+    static final int MAGIC = 0x53454731; // "SEG1"
+    static final int FORMAT_VERSION = 1;
+    static final int HEADER_SIZE = 24;
+    static final int FOOTER_SIZE = 16;
+    static final int DICTIONARY_ENTRY_SIZE = 12;
+
+    private static final int[] NO_PAGES = new int[0];
+
+    private final Path path;
+    private final MappedByteBuffer buffer;
+    private final long minSequence;
+    private final long maxSequence;
+    private final int dictionaryOffset;
+    private final int lemmasCount;
+
+    private Segment(Path path, MappedByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+
+        var size = buffer.capacity();
+        if (size < HEADER_SIZE + FOOTER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(size - 4) != MAGIC) {
+            throw new IOException("Файл " + path + " не является сегментом индекса");
+        }
+        if (buffer.getInt(4) != FORMAT_VERSION) {
+            throw new IOException("Неизвестная версия формата сегмента " + path + ": " + buffer.getInt(4));
+        }
+
+        minSequence = buffer.getLong(8);
+        maxSequence = buffer.getLong(16);
+        dictionaryOffset = (int) buffer.getLong(size - FOOTER_SIZE);
+        lemmasCount = buffer.getInt(size - FOOTER_SIZE + 8);
+        if (dictionaryOffset + (long) lemmasCount * DICTIONARY_ENTRY_SIZE != size - FOOTER_SIZE) {
+            throw new IOException("Повреждён словарь сегмента " + path);
+        }
+    }
+
+    /**
+     * Отображает файл сегмента в память. Файл закрывается сразу: отображение действует, пока объект сегмента
+     * достижим, в том числе после удаления файла.
+     */
+    public static Segment open(Path path) throws IOException {
+        try (var channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Размер сегмента " + path + " больше 2 ГБ");
+            }
+            return new Segment(path, channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    public Path path() {
+        return path;
+    }
+
+    public long minSequence() {
+        return minSequence;
+    }
+
+    public long maxSequence() {
+        return maxSequence;
+    }
+
+    public int lemmasCount() {
+        return lemmasCount;
+    }
+
+    public long size() {
+        return buffer.capacity();
+    }
+
+    // Покрывает ли сегмент все номера другого сегмента (другой сегмент уже слит в этот)
+    public boolean covers(Segment other) {
+        return minSequence <= other.minSequence && other.maxSequence <= maxSequence;
+    }
+
+    /**
+     * @return изменения списка вхождений леммы или null, если в сегменте их нет
+     */
+    public Entry read(int lemmaId) {
+        var low = 0;
+        var high = lemmasCount - 1;
+        while (low <= high) {
+            var middle = (low + high) >>> 1;
+            var middleId = lemmaId(middle);
+            if (middleId < lemmaId) {
+                low = middle + 1;
+            } else if (middleId > lemmaId) {
+                high = middle - 1;
+            } else {
+                return entry(middle);
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * @param index позиция в словаре от 0 до lemmasCount() - 1
+     * @return идентификатор леммы. Идентификаторы возрастают с позицией.
+     */
+    public int lemmaId(int index) {
+        return buffer.getInt(dictionaryOffset + index * DICTIONARY_ENTRY_SIZE);
+    }
+
+    public Entry entry(int index) {
+        var position = new int[]{(int) buffer.getLong(dictionaryOffset + index * DICTIONARY_ENTRY_SIZE + 4)};
+        var cleared = buffer.get(position[0]++) != 0;
+
+        var addedCount = readVarInt(position);
+        var pageIds = new int[addedCount];
+        var ranks = new float[addedCount];
+        var pageId = 0;
+        for (var i = 0; i < addedCount; i++) {
+            pageId += readVarInt(position);
+            pageIds[i] = pageId;
+            ranks[i] = readVarInt(position);
+        }
+
+        var removedCount = readVarInt(position);
+        var removed = removedCount == 0 ? NO_PAGES : new int[removedCount];
+        pageId = 0;
+        for (var i = 0; i < removedCount; i++) {
+            pageId += readVarInt(position);
+            removed[i] = pageId;
+        }
+
+        return new Entry(cleared, new PostingList(pageIds, ranks, addedCount), removed);
+    }
+
+    private int readVarInt(int[] position) {
+        var value = 0;
+        var shift = 0;
+        byte b;
+
+        do {
+            b = buffer.get(position[0]++);
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+
+        return value;
+    }
+
+    /**
+     * @param cleared признак очистки: данные леммы в более старых сегментах не действуют
+     * @param added   добавленные вхождения и вхождения с изменённым рангом
+     * @param removed идентификаторы страниц удалённых вхождений по возрастанию
+     */
+    public record Entry(boolean cleared, PostingList added, int[] removed) {
+
+        // Применение изменений к списку, собранному из более старых сегментов
+        public PostingList applyTo(PostingList postings) {
+            return cleared ? added : postings.merge(added, removed);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package searchengine.index;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Слияние сегментов индекса с последовательными номерами в один сегмент. Леммы перебираются по возрастанию
+ * идентификаторов во всех сегментах сразу, поэтому в памяти находятся данные только одной леммы.
+ */
+public final class SegmentMerger {
+
+    private static final int[] NO_PAGES = new int[0];
+
+    private SegmentMerger() {
+    }
+
+    /**
+     * @param segments сливаемые сегменты по возрастанию номеров, без пропусков между ними
+     * @param writer   запись нового сегмента
+     * @param oldest   есть ли среди сливаемых сегментов самый старый. Тогда удаления и очистки применять не к чему:
+     *                 они отбрасываются вместе с леммами без вхождений.
+     */
+    public static void merge(List<Segment> segments, SegmentWriter writer, boolean oldest) throws IOException {
+        var positions = new int[segments.size()];
+
+        while (true) {
+            var found = false;
+            var lemmaId = 0;
+            for (var i = 0; i < segments.size(); i++) {
+                var segment = segments.get(i);
+                if (positions[i] < segment.lemmasCount() && (!found || segment.lemmaId(positions[i]) < lemmaId)) {
+                    lemmaId = segment.lemmaId(positions[i]);
+                    found = true;
+                }
+            }
+            if (!found) {
+                return;
+            }
+
+            var cleared = false;
+            var postings = PostingList.empty();
+            var removed = NO_PAGES;
+            for (var i = 0; i < segments.size(); i++) {
+                var segment = segments.get(i);
+                if (positions[i] == segment.lemmasCount() || segment.lemmaId(positions[i]) != lemmaId) {
+                    continue;
+                }
+
+                var entry = segment.entry(positions[i]++);
+                if (entry.cleared()) {
+                    // Удаления до очистки не нужны: очистка скрывает все более старые данные
+                    cleared = true;
+                    removed = NO_PAGES;
+                } else {
+                    removed = union(removed, entry.removed());
+                }
+                postings = entry.applyTo(postings);
+            }
+
+            if (!oldest) {
+                writer.add(lemmaId, cleared, postings, removed);
+            } else if (!postings.isEmpty()) {
+                writer.add(lemmaId, false, postings, NO_PAGES);
+            }
+        }
+    }
+
+    // Объединение упорядоченных массивов без повторов
+    private static int[] union(int[] first, int[] second) {
+        if (first.length == 0) {
+            return second;
+        }
+        if (second.length == 0) {
+            return first;
+        }
+
+        var result = new int[first.length + second.length];
+        var count = 0;
+        var i = 0;
+        var j = 0;
+        while (i < first.length || j < second.length) {
+            int value;
+            if (j == second.length || i < first.length && first[i] < second[j]) {
+                value = first[i++];
+            } else if (i == first.length || second[j] < first[i]) {
+                value = second[j++];
+            } else {
+                value = first[i++];
+                j++;
+            }
+            result[count++] = value;
+        }
+
+        return count == result.length ? result : Arrays.copyOf(result, count);
+    }
+}
@@ -0,0 +1,152 @@
+package searchengine.index;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Запись сегмента индекса (формат описан в {@link Segment}). Леммы добавляются по возрастанию идентификаторов, данные
+ * пишутся потоком, в памяти остаётся только словарь. Файл пишется под временным именем и переименовывается после
+ * записи на диск, поэтому прерванная запись не оставляет повреждённых сегментов.
+ */
+public class SegmentWriter implements Closeable {
+
+    private final Path path;
+    private final Path temporaryPath;
+    private final FileChannel channel;
+    private final OutputStream output;
+    private long position;
+    private boolean finished;
+
+    private int[] lemmaIds = new int[256];
+    private long[] offsets = new long[256];
+    private int count;
+
+    /**
+     * @param path        файл сегмента
+     * @param minSequence наименьший номер, покрываемый сегментом
+     * @param maxSequence наибольший номер, покрываемый сегментом
+     */
+    public SegmentWriter(Path path, long minSequence, long maxSequence) throws IOException {
+        this.path = path;
+        temporaryPath = path.resolveSibling(path.getFileName() + Segment.TEMPORARY_SUFFIX);
+        channel = FileChannel.open(temporaryPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.WRITE);
+        output = new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16);
+
+        writeInt(Segment.MAGIC);
+        writeInt(Segment.FORMAT_VERSION);
+        writeLong(minSequence);
+        writeLong(maxSequence);
+    }
+
+    /**
+     * Размер записанных данных - для ограничения размера сегмента
+     */
+    public long size() {
+        return position + (long) count * Segment.DICTIONARY_ENTRY_SIZE + Segment.FOOTER_SIZE;
+    }
+
+    public int lemmasCount() {
+        return count;
+    }
+
+    /**
+     * @param lemmaId идентификатор леммы, больше идентификаторов добавленных ранее лемм
+     * @param cleared признак очистки: данные леммы в более старых сегментах не действуют
+     * @param added   добавленные вхождения и вхождения с изменённым рангом
+     * @param removed идентификаторы страниц удалённых вхождений по возрастанию
+     */
+    public void add(int lemmaId, boolean cleared, PostingList added, int[] removed) throws IOException {
+        if (count > 0 && lemmaIds[count - 1] >= lemmaId) {
+            throw new IllegalArgumentException("Леммы должны добавляться по возрастанию идентификаторов");
+        }
+
+        if (count == lemmaIds.length) {
+            lemmaIds = Arrays.copyOf(lemmaIds, count * 2);
+            offsets = Arrays.copyOf(offsets, count * 2);
+        }
+        lemmaIds[count] = lemmaId;
+        offsets[count++] = position;
+
+        write(cleared ? 1 : 0);
+
+        writeVarInt(added.size());
+        var previousPageId = 0;
+        for (var i = 0; i < added.size(); i++) {
+            writeVarInt(added.pageId(i) - previousPageId);
+            writeVarInt(Math.max(Math.round(added.rank(i)), 0));
+            previousPageId = added.pageId(i);
+        }
+
+        writeVarInt(removed.length);
+        previousPageId = 0;
+        for (var pageId : removed) {
+            writeVarInt(pageId - previousPageId);
+            previousPageId = pageId;
+        }
+    }
+
+    /**
+     * Записывает словарь, сохраняет файл на диск и открывает записанный сегмент
+     */
+    public Segment finish() throws IOException {
+        var dictionaryOffset = position;
+        for (var i = 0; i < count; i++) {
+            writeInt(lemmaIds[i]);
+            writeLong(offsets[i]);
+        }
+        writeLong(dictionaryOffset);
+        writeInt(count);
+        writeInt(Segment.MAGIC);
+
+        output.flush();
+        channel.force(true);
+        channel.close();
+        finished = true;
+
+        Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+        return Segment.open(path);
+    }
+
+    // Незавершённая запись отменяется
+    @Override
+    public void close() throws IOException {
+        if (!finished) {
+            channel.close();
+            Files.deleteIfExists(temporaryPath);
+        }
+    }
+
+    private void write(int value) throws IOException {
+        output.write(value);
+        position++;
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            write((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        write(value);
+    }
+
+    private void writeInt(int value) throws IOException {
+        for (var shift = 24; shift >= 0; shift -= 8) {
+            write(value >>> shift & 0xFF);
+        }
+    }
+
+    private void writeLong(long value) throws IOException {
+        writeInt((int) (value >>> 32));
+        writeInt((int) value);
+    }
+}
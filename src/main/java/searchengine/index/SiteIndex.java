@@ -0,0 +1,226 @@
+package searchengine.index;
+
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Инвертированный индекс одного сайта в памяти: для каждой леммы - список вхождений (идентификаторы страниц по
+ * возрастанию и ранги). Чтение и изменение синхронизируются блокировкой чтения-записи: поиск по сайту выполняется
+ * целиком под блокировкой чтения, изменение одной страницы - под блокировкой записи.
+ */
+public class SiteIndex {
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, PostingList> postings = new HashMap<>();
+    private final Map<Integer, List<String>> pageLemmas = new HashMap<>(); // Для удаления и обновления страниц
+    private final Set<Integer> changedPages = new HashSet<>(); // Страницы, изменённые во время загрузки
+    private volatile boolean ready;
+
+    /**
+     * @param ready true - индекс нового сайта, которому не требуется загрузка из базы данных
+     */
+    public SiteIndex(boolean ready) {
+        this.ready = ready;
+    }
+
+    /**
+     * Загружен ли индекс из базы данных. До окончания загрузки поиск должен выполняться другим способом.
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Добавляет прочитанные из базы данных вхождения леммы. Вхождения страниц, изменённых после начала загрузки,
+     * пропускаются: их актуальное состояние уже в индексе.
+     *
+     * @param lemma    лемма
+     * @param postings вхождения леммы в базе данных
+     */
+    public void load(String lemma, PostingList postings) {
+        lock.writeLock().lock();
+        try {
+            var list = this.postings.get(lemma);
+            if (list == null && changedPages.isEmpty()) {
+                // Загружаемый список принимается без копирования
+                this.postings.put(lemma, postings);
+                for (var i = 0; i < postings.size(); i++) {
+                    pageLemmas.computeIfAbsent(postings.pageId(i), id -> new ArrayList<>()).add(lemma);
+                }
+                return;
+            }
+
+            if (list == null) {
+                list = PostingList.empty();
+                this.postings.put(lemma, list);
+            }
+            for (var i = 0; i < postings.size(); i++) {
+                var pageId = postings.pageId(i);
+                if (changedPages.contains(pageId)) {
+                    continue;
+                }
+
+                list.put(pageId, postings.rank(i));
+                pageLemmas.computeIfAbsent(pageId, id -> new ArrayList<>()).add(lemma);
+            }
+
+            if (list.isEmpty()) {
+                this.postings.remove(lemma);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void finishLoading() {
+        lock.writeLock().lock();
+        try {
+            changedPages.clear();
+            ready = true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Заменяет вхождения страницы
+     *
+     * @param pageId идентификатор страницы
+     * @param lemmas леммы страницы и их ранги
+     */
+    public void updatePage(int pageId, Map<String, ? extends Number> lemmas) {
+        lock.writeLock().lock();
+        try {
+            removePageLemmas(pageId);
+
+            var newLemmas = new ArrayList<String>(lemmas.size());
+            for (var entry : lemmas.entrySet()) {
+                var lemma = entry.getKey();
+                postings.computeIfAbsent(lemma, key -> PostingList.empty()).put(pageId, entry.getValue().floatValue());
+                newLemmas.add(lemma);
+            }
+
+            if (!newLemmas.isEmpty()) {
+                pageLemmas.put(pageId, newLemmas);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removePage(int pageId) {
+        lock.writeLock().lock();
+        try {
+            removePageLemmas(pageId);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private void removePageLemmas(int pageId) {
+        if (!ready) {
+            changedPages.add(pageId);
+        }
+
+        var lemmas = pageLemmas.remove(pageId);
+        if (lemmas == null) {
+            return;
+        }
+
+        for (var lemma : lemmas) {
+            var list = postings.get(lemma);
+            if (list != null && list.remove(pageId) && list.isEmpty()) {
+                postings.remove(lemma);
+            }
+        }
+    }
+
+    /**
+     * Находит страницы, на которых встречаются все леммы
+     *
+     * @param lemmas   леммы поискового запроса
+     * @param result   куда добавляются найденные страницы и их абсолютная релевантность
+     * @param deadline срок расчёта
+     */
+    public void computeRelevance(Collection<String> lemmas, TopRelevance result, Deadline deadline) {
+        lock.readLock().lock();
+        try {
+            var lists = new ArrayList<PostingList>(lemmas.size());
+            for (var lemma : lemmas) {
+                var list = postings.get(lemma);
+                if (list == null) {
+                    // Если хотя бы одной леммы нет на сайте, значит заведомо не найдётся подходящая страница
+                    return;
+                }
+                lists.add(list);
+            }
+
+            PostingsIntersection.intersect(lists, result, deadline);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Количество страниц, на которых встречается лемма
+    public int frequency(String lemma) {
+        lock.readLock().lock();
+        try {
+            var list = postings.get(lemma);
+            return list == null ? 0 : list.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Количество проиндексированных страниц (хотя бы с одной леммой)
+    public int pagesCount() {
+        lock.readLock().lock();
+        try {
+            return pageLemmas.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int lemmasCount() {
+        lock.readLock().lock();
+        try {
+            return postings.size();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public long postingsCount() {
+        lock.readLock().lock();
+        try {
+            return postings.values().stream().mapToLong(PostingList::size).sum();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Приблизительный объём памяти индекса в байтах (64-разрядная JVM со сжатыми указателями): массивы списков
+     * вхождений, записи словаря лемм и списки лемм страниц. Строки лемм учитываются один раз.
+     */
+    public long estimateMemory() {
+        lock.readLock().lock();
+        try {
+            var bytes = 0L;
+            for (var entry : postings.entrySet()) {
+                var list = entry.getValue();
+                bytes += 2L * (16 + 4L * list.capacity()); // Два массива с заголовками
+                bytes += 32; // Объект PostingList
+                bytes += 32 + 24 + 16 + 2L * entry.getKey().length(); // Узел HashMap и строка
+            }
+            for (var lemmas : pageLemmas.values()) {
+                bytes += 32 + 16 + 24 + 16 + 4L * lemmas.size(); // Узел HashMap, Integer, ArrayList с массивом
+            }
+            return bytes;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package searchengine.index;
+
+import java.util.*;
+
+/**
+ * Словарь лемм сайта для подсказок по префиксу. Леммы хранятся упорядоченными, поэтому леммы с общим префиксом - узел
+ * префиксного дерева - занимают непрерывный диапазон, который находится двоичным поиском. Для узлов, в диапазоне
+ * которых больше лемм, чем размер подсказки, самые частые леммы отобраны заранее. Остальные узлы содержат не больше
+ * size лемм, они упорядочиваются по частоте при запросе.
+ * <p>
+ * Словарь неизменяемый: после изменения лемм сайта он строится заново.
+ */
+public class SuggestionIndex {
+
+    private static final int[] NO_LEMMAS = new int[0];
+
+    private final String[] lemmas;
+    private final int[] frequencies;
+    private final int size;
+    private final Map<String, int[]> top = new HashMap<>(); // Префикс -> позиции самых частых лемм по убыванию частоты
+
+    /**
+     * @param frequencies соответствие леммы и её частоты
+     * @param size        наибольший размер подсказки
+     */
+    public SuggestionIndex(Map<String, Integer> frequencies, int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Размер подсказки не может быть меньше 1");
+        }
+
+        this.size = size;
+        lemmas = frequencies.keySet().toArray(new String[0]);
+        Arrays.sort(lemmas);
+        this.frequencies = new int[lemmas.length];
+        for (var i = 0; i < lemmas.length; i++) {
+            this.frequencies[i] = frequencies.get(lemmas[i]);
+        }
+
+        if (lemmas.length > 0) {
+            build(0, lemmas.length, 0);
+        }
+    }
+
+    public int lemmasCount() {
+        return lemmas.length;
+    }
+
+    public int nodesCount() {
+        return top.size();
+    }
+
+    /**
+     * @param prefix начало леммы
+     * @param limit  количество подсказок, не больше размера подсказки словаря
+     * @return самые частые леммы, начинающиеся с префикса, по убыванию частоты
+     */
+    public List<Suggestion> suggest(String prefix, int limit) {
+        var from = lowerBound(prefix);
+        var to = lowerBound(prefix + Character.MAX_VALUE);
+        if (from == to) {
+            return Collections.emptyList();
+        }
+
+        var positions = to - from > size ? top.get(prefix) : selectTop(from, to);
+        var count = Math.min(Math.min(limit, size), positions.length);
+        var result = new ArrayList<Suggestion>(count);
+        for (var i = 0; i < count; i++) {
+            result.add(new Suggestion(lemmas[positions[i]], frequencies[positions[i]]));
+        }
+
+        return result;
+    }
+
+    // Отбор самых частых лемм узла из отборов дочерних узлов. Сохраняются только узлы, больше чем size лемм.
+    private int[] build(int from, int to, int depth) {
+        if (to - from <= size) {
+            return selectTop(from, to);
+        }
+
+        var candidates = new ArrayList<int[]>();
+        var i = from;
+        if (lemmas[i].length() == depth) {
+            // Сам префикс - лемма. При упорядочивании она стоит перед леммами, которые её продолжают.
+            candidates.add(new int[]{i++});
+        }
+        while (i < to) {
+            var symbol = lemmas[i].charAt(depth);
+            var j = i + 1;
+            while (j < to && lemmas[j].charAt(depth) == symbol) {
+                j++;
+            }
+            candidates.add(build(i, j, depth + 1));
+            i = j;
+        }
+
+        var positions = candidates.stream()
+                .flatMapToInt(Arrays::stream)
+                .boxed()
+                .sorted(this::compare)
+                .limit(size)
+                .mapToInt(Integer::intValue)
+                .toArray();
+        top.put(lemmas[from].substring(0, depth), positions);
+
+        return positions;
+    }
+
+    private int[] selectTop(int from, int to) {
+        if (from == to) {
+            return NO_LEMMAS;
+        }
+
+        var positions = new Integer[to - from];
+        for (var i = from; i < to; i++) {
+            positions[i - from] = i;
+        }
+        Arrays.sort(positions, this::compare);
+
+        return Arrays.stream(positions).limit(size).mapToInt(Integer::intValue).toArray();
+    }
+
+    // По убыванию частоты, при равной частоте - по алфавиту
+    private int compare(int first, int second) {
+        var result = Integer.compare(frequencies[second], frequencies[first]);
+        return result != 0 ? result : Integer.compare(first, second);
+    }
+
+    // Позиция первой леммы, не меньшей заданной строки
+    private int lowerBound(String value) {
+        var low = 0;
+        var high = lemmas.length;
+        while (low < high) {
+            var middle = (low + high) >>> 1;
+            if (lemmas[middle].compareTo(value) < 0) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+
+        return low;
+    }
+
+    /**
+     * @param lemma     лемма
+     * @param frequency количество страниц сайта, на которых встречается лемма
+     */
+    public record Suggestion(String lemma, int frequency) {
+    }
+}
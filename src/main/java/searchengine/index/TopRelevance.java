@@ -0,0 +1,230 @@
+package searchengine.index;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Самые релевантные найденные страницы. Хранятся только k лучших страниц (ограниченная куча), при этом учитывается
+ * общее количество найденных страниц. Порядок: по убыванию релевантности, при равной релевантности - по возрастанию
+ * идентификатора страницы (как в группирующем запросе).
+ * <p>
+ * Пара "релевантность - страница" упаковывается в long так, что меньший ключ - более релевантная страница: биты
+ * неотрицательного float сравниваются так же, как сами значения. Куча хранит наибольший (худший) ключ в корне.
+ */
+public class TopRelevance {
+
+    private final int k;
+    private final long after; // Отбираются только страницы после этого ключа (продолжение вывода)
+    private long[] heap; // Растёт по мере заполнения: k может быть намного больше количества найденных страниц
+    private int size;
+    private int count;
+    private int scored;
+    private float maxRelevance;
+    private boolean partial; // Расчёт прерван: учтены не все найденные страницы
+    private boolean finished;
+
+    /**
+     * @param k сколько самых релевантных страниц хранить
+     */
+    public TopRelevance(int k) {
+        this.k = Math.max(k, 1);
+        this.after = Long.MIN_VALUE;
+        heap = new long[Math.min(this.k, 64)];
+    }
+
+    /**
+     * Отбор продолжения вывода: k лучших страниц среди страниц хуже указанной. Количество найденных страниц и
+     * максимальная релевантность учитывают все страницы.
+     *
+     * @param k              сколько самых релевантных страниц хранить
+     * @param afterRelevance абсолютная релевантность последней выведенной страницы
+     * @param afterPageId    идентификатор последней выведенной страницы
+     */
+    public TopRelevance(int k, float afterRelevance, int afterPageId) {
+        this.k = Math.max(k, 1);
+        this.after = key(afterPageId, afterRelevance);
+        heap = new long[Math.min(this.k, 64)];
+    }
+
+    /**
+     * Может ли страница с указанной верхней границей релевантности попасть в число лучших. Если нет, релевантность
+     * страницы можно не рассчитывать, достаточно учесть её в количестве найденных ({@link #skip()}).
+     *
+     * @param upperBound верхняя граница релевантности страницы
+     */
+    public boolean isCompetitive(float upperBound) {
+        // При равной релевантности страница может вытеснить худшую за счёт меньшего идентификатора
+        return size < k || upperBound >= relevanceOf(heap[0]);
+    }
+
+    public void add(int pageId, float relevance) {
+        checkNotFinished();
+        count++;
+        scored++;
+        maxRelevance = Math.max(maxRelevance, relevance);
+
+        var key = key(pageId, relevance);
+        if (key <= after) {
+            return; // Страница уже выведена
+        }
+        if (size < k) {
+            if (size == heap.length) {
+                heap = Arrays.copyOf(heap, (int) Math.min((long) size + (size >> 1) + 1, k));
+            }
+            heap[size] = key;
+            siftUp(size++);
+        } else if (key < heap[0]) {
+            heap[0] = key;
+            siftDown(0);
+        }
+    }
+
+    // Учитывает найденную страницу, релевантность которой не рассчитывалась
+    public void skip() {
+        checkNotFinished();
+        count++;
+    }
+
+    // Количество найденных страниц
+    public int count() {
+        return count;
+    }
+
+    // Расчёт прерван по истечении времени: количество и отбор учитывают только просмотренные страницы
+    public void markPartial() {
+        partial = true;
+    }
+
+    public boolean isPartial() {
+        return partial;
+    }
+
+    /**
+     * Максимальная релевантность среди всех найденных страниц. Самая релевантная страница никогда не отсекается,
+     * поэтому значение точное.
+     */
+    public float maxRelevance() {
+        return maxRelevance;
+    }
+
+    // Количество страниц, для которых рассчитывалась релевантность
+    public int scored() {
+        return scored;
+    }
+
+    /**
+     * Упорядочивает лучшие страницы. После вызова добавление страниц невозможно.
+     *
+     * @return количество лучших страниц
+     */
+    public int finish() {
+        if (!finished) {
+            Arrays.sort(heap, 0, size);
+            finished = true;
+        }
+        return size;
+    }
+
+    public int pageId(int index) {
+        checkFinished();
+        return (int) heap[index];
+    }
+
+    public float relevance(int index) {
+        checkFinished();
+        return relevanceOf(heap[index]);
+    }
+
+    /**
+     * Слияние результатов отбора по частям (например, по сайтам): k лучших страниц всех частей, сумма количеств
+     * найденных страниц, общий максимум релевантности. Части упорядочиваются и сливаются за один проход.
+     *
+     * @param k     сколько самых релевантных страниц оставить
+     * @param parts результаты отбора по частям
+     * @return упорядоченный результат ({@link #finish()} уже вызван)
+     */
+    public static TopRelevance merge(int k, List<TopRelevance> parts) {
+        var result = new TopRelevance(k);
+        var positions = new int[parts.size()];
+        for (var part : parts) {
+            part.finish();
+            result.count += part.count;
+            result.scored += part.scored;
+            result.maxRelevance = Math.max(result.maxRelevance, part.maxRelevance);
+            result.partial |= part.partial;
+        }
+
+        // Частей немного (по числу сайтов), поэтому наименьший ключ ищется перебором
+        var keys = new long[Math.min(result.k, parts.stream().mapToInt(part -> part.size).sum())];
+        for (var i = 0; i < keys.length; i++) {
+            var best = -1;
+            var bestKey = Long.MAX_VALUE;
+            for (var j = 0; j < parts.size(); j++) {
+                var part = parts.get(j);
+                if (positions[j] < part.size && (best < 0 || part.heap[positions[j]] < bestKey)) {
+                    best = j;
+                    bestKey = part.heap[positions[j]];
+                }
+            }
+            keys[i] = bestKey;
+            positions[best]++;
+        }
+
+        result.heap = keys;
+        result.size = keys.length;
+        result.finished = true;
+
+        return result;
+    }
+
+    private static long key(int pageId, float relevance) {
+        var bits = Float.floatToIntBits(Math.max(relevance, 0f));
+        return (long) (Integer.MAX_VALUE - bits) << 32 | pageId & 0xFFFFFFFFL;
+    }
+
+    private static float relevanceOf(long key) {
+        return Float.intBitsToFloat(Integer.MAX_VALUE - (int) (key >>> 32));
+    }
+
+    private void siftUp(int index) {
+        var key = heap[index];
+        while (index > 0) {
+            var parent = (index - 1) >>> 1;
+            if (heap[parent] >= key) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = key;
+    }
+
+    private void siftDown(int index) {
+        var key = heap[index];
+        var half = size >>> 1;
+        while (index < half) {
+            var child = 2 * index + 1;
+            if (child + 1 < size && heap[child + 1] > heap[child]) {
+                child++;
+            }
+            if (key >= heap[child]) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = key;
+    }
+
+    private void checkNotFinished() {
+        if (finished) {
+            throw new IllegalStateException("Отбор страниц уже завершён");
+        }
+    }
+
+    private void checkFinished() {
+        if (!finished) {
+            throw new IllegalStateException("Отбор страниц ещё не завершён");
+        }
+    }
+}
@@ -10,7 +10,10 @@ import org.hibernate.annotations.OnDeleteAction;
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "indexes")
+@Table(name = "indexes",
+        uniqueConstraints = {@UniqueConstraint(columnNames = {"lemma_id", "page_id"})},
+        // Покрывающий индекс для расчёта релевантности
+        indexes = {@jakarta.persistence.Index(columnList = "lemma_id, page_id, rank_count")})
 public class Index {
 
     @Id
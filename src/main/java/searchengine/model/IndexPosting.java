@@ -0,0 +1,12 @@
+package searchengine.model;
+
+/**
+ * Строка таблицы indexes без загрузки связанных сущностей
+ */
+public interface IndexPosting {
+    int getLemmaId();
+
+    int getPageId();
+
+    float getRank();
+}
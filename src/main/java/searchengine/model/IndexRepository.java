@@ -1,13 +1,78 @@
 package searchengine.model;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
 public interface IndexRepository extends CrudRepository<Index, Integer> {
     List<Index> findByPage(Page page);
-    List<Index> findByLemma(Lemma lemma);
-    List<Index> findByLemmaAndPageIn(Lemma lemma, Iterable<Page> pages);
+
+    /**
+     * Находит страницы, на которых встречаются все переданные леммы, за один запрос. Страница подходит, если для неё
+     * найдено ровно lemmasCount индексов. Леммы разных сайтов можно передавать вместе: страница ссылается только на
+     * леммы своего сайта. Сортировка и ограничение количества выполняются в базе данных, а общее количество найденных
+     * страниц возвращается оконной функцией в каждой строке.
+     *
+     * @param lemmaIds    идентификаторы лемм всех сайтов поиска
+     * @param lemmasCount количество лемм в поисковом запросе (для одного сайта)
+     * @param limit       сколько самых релевантных страниц вернуть
+     * @return страницы по убыванию абсолютной релевантности
+     */
+    @Query(value = """
+            SELECT i.page_id AS pageId, SUM(i.rank_count) AS relevance, COUNT(*) OVER() AS total
+            FROM indexes i
+            WHERE i.lemma_id IN (:lemmaIds)
+            GROUP BY i.page_id
+            HAVING COUNT(*) = :lemmasCount
+            ORDER BY relevance DESC, pageId
+            LIMIT :limit""", nativeQuery = true)
+    List<PageRelevance> findRelevance(@Param("lemmaIds") Collection<Integer> lemmaIds,
+                                      @Param("lemmasCount") int lemmasCount,
+                                      @Param("limit") int limit);
+
+    /**
+     * Продолжение выборки {@link #findRelevance}: страницы после указанной в порядке вывода (по убыванию релевантности,
+     * затем по возрастанию идентификатора). Общее количество не рассчитывается (total = 0).
+     *
+     * @param lemmaIds      идентификаторы лемм всех сайтов поиска
+     * @param lemmasCount   количество лемм в поисковом запросе (для одного сайта)
+     * @param lastRelevance абсолютная релевантность последней выведенной страницы
+     * @param lastPageId    идентификатор последней выведенной страницы
+     * @param limit         сколько страниц вернуть
+     * @return страницы по убыванию абсолютной релевантности
+     */
+    @Query(value = """
+            SELECT i.page_id AS pageId, SUM(i.rank_count) AS relevance, 0 AS total
+            FROM indexes i
+            WHERE i.lemma_id IN (:lemmaIds)
+            GROUP BY i.page_id
+            HAVING COUNT(*) = :lemmasCount
+                AND (relevance < :lastRelevance OR relevance = :lastRelevance AND pageId > :lastPageId)
+            ORDER BY relevance DESC, pageId
+            LIMIT :limit""", nativeQuery = true)
+    List<PageRelevance> findRelevanceAfter(@Param("lemmaIds") Collection<Integer> lemmaIds,
+                                           @Param("lemmasCount") int lemmasCount,
+                                           @Param("lastRelevance") double lastRelevance,
+                                           @Param("lastPageId") int lastPageId,
+                                           @Param("limit") int limit);
+
+    // Индексы лемм без загрузки сущностей, упорядоченные по лемме и странице
+    @Query(value = """
+            SELECT i.lemma_id AS lemmaId, i.page_id AS pageId, i.rank_count AS `rank`
+            FROM indexes i
+            WHERE i.lemma_id IN (:lemmaIds)
+            ORDER BY i.lemma_id, i.page_id""", nativeQuery = true)
+    List<IndexPosting> findPostings(@Param("lemmaIds") Collection<Integer> lemmaIds);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM indexes WHERE page_id IN (:pageIds)", nativeQuery = true)
+    int deleteByPageIds(@Param("pageIds") Collection<Integer> pageIds);
 }
@@ -10,7 +10,7 @@ import org.hibernate.annotations.OnDeleteAction;
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "lemmas")
+@Table(name = "lemmas", uniqueConstraints = {@UniqueConstraint(columnNames = {"site_id", "lemma"})})
 public class Lemma {
 
     @Id
@@ -23,7 +23,8 @@ public class Lemma {
     @NonNull
     private Site site;
 
-    @Column(columnDefinition = "VARCHAR(255)", nullable = false)
+    // Леммы сравниваются точно: "е" и "ё" - разные буквы
+    @Column(columnDefinition = "VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin", nullable = false)
     @NonNull
     private String lemma;
 
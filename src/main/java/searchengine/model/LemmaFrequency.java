@@ -0,0 +1,10 @@
+package searchengine.model;
+
+/**
+ * Лемма и её частота без загрузки сущности
+ */
+public interface LemmaFrequency {
+    String getLemma();
+
+    int getFrequency();
+}
@@ -1,8 +1,13 @@
 package searchengine.model;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
 import java.util.List;
 
 @Repository
@@ -11,4 +16,26 @@ public interface LemmaRepository extends CrudRepository<Lemma, Integer> {
     List<Lemma> findBySiteAndLemmaIn(Site site, Iterable<String> lemma);
     List<Lemma> findBySiteInAndLemmaIn(Iterable<Site> site, Iterable<String> lemma);
 
+    @Query(value = "SELECT l.lemma AS lemma, l.frequency AS frequency FROM lemmas l WHERE l.site_id = :siteId",
+            nativeQuery = true)
+    List<LemmaFrequency> findFrequenciesBySite(@Param("siteId") int siteId);
+
+    @Query(value = "SELECT l.id FROM lemmas l WHERE l.site_id = :siteId ORDER BY l.id LIMIT :limit", nativeQuery = true)
+    List<Integer> findIdsBySite(@Param("siteId") int siteId, @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM lemmas WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
+
+    // Удаление лемм, которые после удаления страницы больше нигде не встречаются
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM lemmas WHERE id IN (:ids) AND frequency <= 1", nativeQuery = true)
+    int deleteUnusedByIds(@Param("ids") Collection<Integer> ids);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE lemmas SET frequency = frequency - 1 WHERE id IN (:ids)", nativeQuery = true)
+    int decrementFrequency(@Param("ids") Collection<Integer> ids);
 }
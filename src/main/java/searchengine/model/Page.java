@@ -8,10 +8,15 @@ import lombok.NonNull;
 import org.hibernate.annotations.OnDelete;
 import org.hibernate.annotations.OnDeleteAction;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
 @Data
 @NoArgsConstructor
 @Entity
-@Table(name = "pages", indexes = {@Index(columnList = "path")})
+@Table(name = "pages", indexes = {@Index(columnList = "site_id, path_hash")})
 public class Page {
 
     @Id
@@ -31,12 +36,39 @@ public class Page {
     @NonNull
     private String path;
 
+    // Индексируется хеш пути фиксированной длины, а не сам путь. Устанавливается вместе с path.
+    @Column(name = "path_hash", nullable = false)
+    private long pathHash;
+
     private int code;
 
-    @Column(columnDefinition = "MEDIUMTEXT", nullable = false)
+    // html страницы в процессе анализа. В базе данных хранится отдельно и в сжатом виде (см. PageContent), поэтому при
+    // загрузке страницы из базы данных содержимое пустое.
+    @Transient
     @NonNull
     private String content = "";
 
+    public void setPath(@NonNull String path) {
+        this.path = path;
+        this.pathHash = hashPath(path);
+    }
+
+    /**
+     * Хеш пути для поиска страницы по индексу (site_id, path_hash): первые 60 бит MD5. Совпадает с
+     * CONV(LEFT(MD5(path), 15), 16, 10) в MySQL. Возможные коллизии исключаются дополнительным сравнением путей.
+     *
+     * @param path путь страницы
+     * @return неотрицательный хеш
+     */
+    public static long hashPath(@NonNull String path) {
+        try {
+            var digest = MessageDigest.getInstance("MD5").digest(path.getBytes(StandardCharsets.UTF_8));
+            return Long.parseLong(HexFormat.of().formatHex(digest, 0, 8).substring(0, 15), 16);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
     public String getUrl() {
         var rootPath = site.getUrl();
         var needSlash = !rootPath.endsWith("/");
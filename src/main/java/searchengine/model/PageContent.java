@@ -0,0 +1,34 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * Сжатый html страницы. Хранится отдельно от pages, чтобы загрузка страниц не требовала чтения их содержимого.
+ * Формат данных совпадает с результатом функции MySQL COMPRESS(): 4 байта длины исходных данных (little-endian), затем
+ * поток zlib.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "page_contents")
+public class PageContent {
+
+    @Id
+    private int id;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @MapsId
+    @OnDelete(action = OnDeleteAction.CASCADE) // Удалять содержимое при удалении страницы
+    @JoinColumn(name = "page_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @NonNull
+    private Page page;
+
+    @Column(columnDefinition = "MEDIUMBLOB", nullable = false)
+    @NonNull
+    private byte[] data;
+}
@@ -0,0 +1,27 @@
+package searchengine.model;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository
+public interface PageContentRepository extends CrudRepository<PageContent, Integer> {
+
+    // Запись без предварительного чтения: содержимое страницы может перезаписываться при повторном анализе
+    @Modifying
+    @Transactional
+    @Query(value = """
+            INSERT INTO page_contents (page_id, data) VALUES (:pageId, :data)
+            ON DUPLICATE KEY UPDATE data = VALUES(data)""", nativeQuery = true)
+    void upsert(@Param("pageId") int pageId, @Param("data") byte[] data);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM page_contents WHERE page_id IN (:pageIds)", nativeQuery = true)
+    int deleteByPageIds(@Param("pageIds") Collection<Integer> pageIds);
+}
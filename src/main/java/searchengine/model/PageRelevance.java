@@ -0,0 +1,13 @@
+package searchengine.model;
+
+/**
+ * Результат агрегирующего запроса релевантности: страница, её абсолютная релевантность и общее количество найденных
+ * страниц (одинаково для всех строк выборки)
+ */
+public interface PageRelevance {
+    int getPageId();
+
+    double getRelevance();
+
+    long getTotal();
+}
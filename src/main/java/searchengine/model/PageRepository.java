@@ -1,13 +1,50 @@
 package searchengine.model;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.stream.Collectors;
 
 @Repository
 public interface PageRepository extends CrudRepository<Page, Integer> {
     List<Page> findBySiteIn(Iterable<Site> site);
-    Page findBySiteAndPath(Site site, String path);
-    List<Page> findBySiteAndPathIn(Site site, Iterable<String> paths);
+    Page findBySiteAndPathHashAndPath(Site site, long pathHash, String path);
+    List<Page> findBySiteAndPathHashIn(Site site, Collection<Long> pathHashes);
+
+    // Поиск по индексу (site_id, path_hash) с проверкой пути на случай коллизии хешей
+    default Page findBySiteAndPath(Site site, String path) {
+        return findBySiteAndPathHashAndPath(site, Page.hashPath(path), path);
+    }
+
+    default List<Page> findBySiteAndPathIn(Site site, Collection<String> paths) {
+        if (paths.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        var hashes = paths.stream().map(Page::hashPath).collect(Collectors.toSet());
+        var pathsSet = new HashSet<>(paths);
+
+        return findBySiteAndPathHashIn(site, hashes).stream()
+                .filter(page -> pathsSet.contains(page.getPath()))
+                .toList();
+    }
+
+    long countBySite(Site site);
+    long countBySiteIn(Iterable<Site> site);
+
+    @Query(value = "SELECT p.id FROM pages p WHERE p.site_id = :siteId ORDER BY p.id LIMIT :limit", nativeQuery = true)
+    List<Integer> findIdsBySite(@Param("siteId") int siteId, @Param("limit") int limit);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM pages WHERE id IN (:ids)", nativeQuery = true)
+    int deleteByIds(@Param("ids") Collection<Integer> ids);
 }
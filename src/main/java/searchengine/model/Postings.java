@@ -0,0 +1,37 @@
+package searchengine.model;
+
+import jakarta.persistence.*;
+import lombok.*;
+import org.hibernate.annotations.OnDelete;
+import org.hibernate.annotations.OnDeleteAction;
+
+/**
+ * Сжатый список вхождений леммы: одна строка на лемму вместо строки на каждую пару "страница - лемма" в indexes.
+ * Формат данных описан в {@link searchengine.index.PostingsCodec}.
+ */
+@Data
+@NoArgsConstructor
+@Entity
+@Table(name = "postings")
+public class Postings {
+
+    @Id
+    private int id;
+
+    @OneToOne(fetch = FetchType.LAZY)
+    @MapsId
+    @OnDelete(action = OnDeleteAction.CASCADE) // Удалять вхождения при удалении леммы
+    @JoinColumn(name = "lemma_id")
+    @ToString.Exclude
+    @EqualsAndHashCode.Exclude
+    @NonNull
+    private Lemma lemma;
+
+    // Количество вхождений - для оценки размера без распаковки
+    @Column(name = "postings_count", nullable = false)
+    private int count;
+
+    @Column(columnDefinition = "LONGBLOB", nullable = false)
+    @NonNull
+    private byte[] data;
+}
@@ -0,0 +1,37 @@
+package searchengine.model;
+
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+
+@Repository
+public interface PostingsRepository extends CrudRepository<Postings, Integer> {
+
+    @Query(value = "SELECT COALESCE(SUM(LENGTH(p.data)), 0) FROM postings p", nativeQuery = true)
+    long sumDataLength();
+
+    @Query(value = "SELECT COALESCE(SUM(p.postings_count), 0) FROM postings p", nativeQuery = true)
+    long sumPostingsCount();
+
+    // Размер таблицы с индексами по статистике InnoDB (приблизительный)
+    @Query(value = """
+            SELECT COALESCE(SUM(t.data_length + t.index_length), 0)
+            FROM information_schema.tables t
+            WHERE t.table_schema = DATABASE() AND t.table_name = :tableName""", nativeQuery = true)
+    long getTableSize(@Param("tableName") String tableName);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM postings WHERE lemma_id IN (:lemmaIds)", nativeQuery = true)
+    int deleteByLemmaIds(@Param("lemmaIds") Collection<Integer> lemmaIds);
+
+    @Modifying
+    @Transactional
+    @Query(value = "DELETE FROM postings", nativeQuery = true)
+    int deleteAllPostings();
+}
@@ -29,7 +29,8 @@ public class Site {
     @Column(name = "last_error", columnDefinition = "TEXT")
     private String lastError;
 
-    @Column(columnDefinition = "VARCHAR(255)", nullable = false, unique = true)
+    // Уникальна пара url и версии: во время полной индексации у сайта есть опубликованная и строящаяся версии
+    @Column(columnDefinition = "VARCHAR(255)", nullable = false)
     @NonNull
     private String url;
 
@@ -38,6 +39,14 @@ public class Site {
     @NonNull
     private String name;
 
+    // Номер версии индекса сайта. Каждая полная индексация строит новую версию со своими страницами и леммами.
+    @Column(nullable = false)
+    private int version = 1;
+
+    // Поиск выполняется только по опубликованной версии. Версия публикуется после завершения её индексации.
+    @Column(nullable = false)
+    private boolean published;
+
     public boolean indexingFailed() {
         return status == IndexingStatus.FAILED;
     }
@@ -1,13 +1,33 @@
 package searchengine.model;
 
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.CrudRepository;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import java.util.List;
 
 @Repository
 public interface SiteRepository extends CrudRepository<Site, Integer> {
-    Site findByUrl(String url);
+    // Все версии сайтов
     List<Site> findByUrlIn(List<String> urls);
     List<Site> findByStatusAndUrlIn(IndexingStatus status, List<String> urls);
+    Site findFirstByUrlOrderByVersionDesc(String url);
+
+    // Опубликованные версии сайтов - по ним выполняется поиск
+    Site findByPublishedTrueAndUrl(String url);
+    List<Site> findByPublishedTrueAndUrlIn(List<String> urls);
+
+    // Переключение поиска на версию сайта одним запросом: остальные версии сайта перестают быть опубликованными
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE sites SET published = (id = :siteId) WHERE url = :url", nativeQuery = true)
+    int publish(@Param("siteId") int siteId, @Param("url") String url);
+
+    @Modifying
+    @Transactional
+    @Query(value = "UPDATE sites SET last_error = :error WHERE id = :siteId", nativeQuery = true)
+    int updateLastError(@Param("siteId") int siteId, @Param("error") String error);
 }
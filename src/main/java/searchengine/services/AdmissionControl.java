@@ -0,0 +1,60 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.AdmissionSettings;
+
+/**
+ * Допуск запросов API (admission-settings). У поиска и индексации раздельные пределы: всплеск поисковых запросов не
+ * мешает индексации страниц, а индексация не занимает места поисковых запросов.
+ */
+@Slf4j
+@Service
+public class AdmissionControl {
+
+    private final MeterRegistry registry;
+    private final AdmissionLimiter search;
+    private final AdmissionLimiter indexing;
+
+    public AdmissionControl(AdmissionSettings settings, MeterRegistry registry) {
+        this.registry = registry;
+        search = register("search", new AdmissionLimiter(settings.getSearch()));
+        indexing = register("indexing", new AdmissionLimiter(settings.getIndexing()));
+    }
+
+    public AdmissionLimiter.Permit acquireSearch() {
+        return acquire("search", search);
+    }
+
+    public AdmissionLimiter.Permit acquireIndexing() {
+        return acquire("indexing", indexing);
+    }
+
+    private AdmissionLimiter.Permit acquire(String path, AdmissionLimiter limiter) {
+        var permit = limiter.acquire();
+        if (!permit.isAdmitted()) {
+            log.debug("Запрос ({}) отклонён: {}, предел {}", path, permit.rejection(), limiter.getLimit());
+            Counter.builder("admission.rejected")
+                    .description("Запросы, отклонённые из-за ограничения одновременных запросов")
+                    .tag("path", path)
+                    .tag("reason", permit.rejection().name().toLowerCase())
+                    .register(registry)
+                    .increment();
+        }
+
+        return permit;
+    }
+
+    private AdmissionLimiter register(String path, AdmissionLimiter limiter) {
+        Gauge.builder("admission.limit", limiter, AdmissionLimiter::getLimit).tag("path", path)
+                .description("Предел одновременных запросов").register(registry);
+        Gauge.builder("admission.in.flight", limiter, AdmissionLimiter::getInFlight).tag("path", path)
+                .description("Выполняемые запросы").register(registry);
+        Gauge.builder("admission.waiting", limiter, AdmissionLimiter::getWaiting).tag("path", path)
+                .description("Запросы в очереди").register(registry);
+        return limiter;
+    }
+}
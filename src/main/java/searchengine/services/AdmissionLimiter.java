@@ -0,0 +1,126 @@
+package searchengine.services;
+
+import searchengine.config.AdmissionLimit;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ограничение одновременно выполняемых запросов одного вида. Запрос сверх предела ожидает в короткой очереди, при
+ * заполненной очереди или по истечении ожидания отклоняется сразу, не занимая соединения с базой данных и потоки.
+ * <p>
+ * Подстраиваемый предел (adaptive) меняется по правилу AIMD: каждый запрос, выполненный быстрее latency-threshold,
+ * увеличивает предел на 1 / предел (на 1 за каждые "предел" запросов), каждый более медленный запрос уменьшает его на
+ * DECREASE_FACTOR. При перегрузке время выполнения растёт, и предел быстро снижается до пропускной способности базы
+ * данных, а после снятия нагрузки медленно возвращается к max-concurrency.
+ */
+public class AdmissionLimiter {
+
+    private static final double DECREASE_FACTOR = 0.9;
+
+    private final boolean adaptive;
+    private final int minLimit;
+    private final int maxLimit;
+    private final int queueSize;
+    private final long queueTimeoutNanos;
+    private final long latencyThresholdNanos;
+
+    private double limit;
+    private int inFlight;
+    private int waiting;
+
+    public AdmissionLimiter(AdmissionLimit settings) {
+        adaptive = settings.isAdaptive();
+        maxLimit = settings.getMaxConcurrency();
+        minLimit = Math.min(settings.getMinConcurrency(), maxLimit);
+        queueSize = settings.getQueueSize();
+        queueTimeoutNanos = settings.getQueueTimeout().toNanos();
+        latencyThresholdNanos = settings.getLatencyThreshold().toNanos();
+        limit = maxLimit;
+    }
+
+    /**
+     * Ожидает места не дольше queue-timeout. Разрешение нужно закрыть после выполнения запроса, в том числе
+     * отклонённое (закрытие отклонённого разрешения ничего не делает).
+     */
+    public Permit acquire() {
+        synchronized (this) {
+            if (inFlight < getLimit() && waiting == 0) {
+                inFlight++;
+                return new Permit(this, System.nanoTime(), null);
+            }
+            if (waiting >= queueSize) {
+                return new Permit(this, 0, Rejection.QUEUE_FULL);
+            }
+
+            waiting++;
+            try {
+                var deadline = System.nanoTime() + queueTimeoutNanos;
+                while (inFlight >= getLimit()) {
+                    var remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return new Permit(this, 0, Rejection.QUEUE_TIMEOUT);
+                    }
+                    TimeUnit.NANOSECONDS.timedWait(this, remaining);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return new Permit(this, 0, Rejection.QUEUE_TIMEOUT);
+            } finally {
+                waiting--;
+            }
+
+            inFlight++;
+            return new Permit(this, System.nanoTime(), null);
+        }
+    }
+
+    private synchronized void release(long latencyNanos) {
+        inFlight--;
+        if (adaptive) {
+            if (latencyNanos > latencyThresholdNanos) {
+                limit = Math.max(limit * DECREASE_FACTOR, minLimit);
+            } else {
+                limit = Math.min(limit + 1 / limit, maxLimit);
+            }
+        }
+        notifyAll();
+    }
+
+    public synchronized int getLimit() {
+        return (int) limit;
+    }
+
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    public synchronized int getWaiting() {
+        return waiting;
+    }
+
+    /**
+     * Причина отклонения запроса
+     */
+    public enum Rejection {
+        QUEUE_FULL, // Очередь заполнена: клиенту следует снизить частоту запросов (HTTP 429)
+        QUEUE_TIMEOUT // Место не освободилось за время ожидания: сервис перегружен (HTTP 503)
+    }
+
+    /**
+     * @param start     время допуска запроса (System.nanoTime)
+     * @param rejection причина отклонения или null, если запрос допущен
+     */
+    public record Permit(AdmissionLimiter limiter, long start, Rejection rejection) implements AutoCloseable {
+
+        public boolean isAdmitted() {
+            return rejection == null;
+        }
+
+        @Override
+        public void close() {
+            if (isAdmitted()) {
+                limiter.release(System.nanoTime() - start);
+            }
+        }
+    }
+}
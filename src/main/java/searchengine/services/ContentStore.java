@@ -0,0 +1,126 @@
+package searchengine.services;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.model.Page;
+import searchengine.model.PageContentRepository;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Хранилище html страниц (таблица page_contents). Содержимое сжимается и читается только тогда, когда оно нужно:
+ * для сниппетов результатов поиска или повторного анализа.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class ContentStore {
+
+    private final PageContentRepository pageContentRepository;
+
+    /**
+     * Сохраняет содержимое записанной ранее страницы
+     *
+     * @param page    страница с идентификатором
+     * @param content html страницы
+     */
+    public void save(@NonNull Page page, @NonNull String content) {
+        if (page.getId() == 0) {
+            throw new IllegalArgumentException("Страница " + page.getPath() + " ещё не записана в базу данных");
+        }
+
+        pageContentRepository.upsert(page.getId(), compress(content));
+    }
+
+    public String load(@NonNull Page page) {
+        return pageContentRepository.findById(page.getId())
+                .map(content -> decompress(content.getData()))
+                .orElse("");
+    }
+
+    /**
+     * Читает содержимое нескольких страниц одним запросом
+     *
+     * @param pages страницы
+     * @return соответствие идентификатора страницы и её html. Для страниц без содержимого значения нет.
+     */
+    public Map<Integer, String> load(@NonNull Collection<Page> pages) {
+        var pageIds = pages.stream().map(Page::getId).toList();
+        var contents = new HashMap<Integer, String>();
+
+        for (var content : pageContentRepository.findAllById(pageIds)) {
+            contents.put(content.getId(), decompress(content.getData()));
+        }
+
+        return contents;
+    }
+
+    // Формат MySQL COMPRESS(): длина исходных данных, затем поток zlib. Пустая строка хранится пустым массивом.
+    static byte[] compress(String content) {
+        var bytes = content.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0) {
+            return new byte[0];
+        }
+
+        var deflater = new Deflater();
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+
+            var output = new ByteArrayOutputStream(bytes.length / 4 + 16);
+            var header = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN).putInt(bytes.length).array();
+            output.write(header, 0, header.length);
+
+            var buffer = new byte[8192];
+            while (!deflater.finished()) {
+                var count = deflater.deflate(buffer);
+                output.write(buffer, 0, count);
+            }
+
+            return output.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    static String decompress(byte[] data) {
+        if (data == null || data.length <= 4) {
+            return "";
+        }
+
+        var length = ByteBuffer.wrap(data, 0, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+        var bytes = new byte[length];
+
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(data, 4, data.length - 4);
+
+            var count = 0;
+            while (count < length && !inflater.finished()) {
+                var inflated = inflater.inflate(bytes, count, length - count);
+                if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    break;
+                }
+                count += inflated;
+            }
+
+            return new String(bytes, 0, count, StandardCharsets.UTF_8);
+        } catch (DataFormatException e) {
+            log.error("Повреждено содержимое страницы: {}", e.getLocalizedMessage());
+            return "";
+        } finally {
+            inflater.end();
+        }
+    }
+}
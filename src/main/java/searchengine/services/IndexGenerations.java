@@ -0,0 +1,42 @@
+package searchengine.services;
+
+import lombok.NonNull;
+import org.springframework.stereotype.Service;
+import searchengine.model.Site;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Номера поколений индексов сайтов. Номер увеличивается при каждом изменении индекса сайта: анализе или удалении
+ * страницы, удалении сайта. Результат, рассчитанный при тех же номерах поколений, остаётся актуальным.
+ */
+@Service
+public class IndexGenerations {
+
+    private final Map<Integer, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    public long get(int siteId) {
+        var generation = generations.get(siteId);
+        return generation == null ? 0 : generation.get();
+    }
+
+    /**
+     * @param siteIds идентификаторы сайтов
+     * @return номера поколений в порядке перечисления сайтов
+     */
+    public long[] get(@NonNull Collection<Integer> siteIds) {
+        var result = new long[siteIds.size()];
+        var i = 0;
+        for (var siteId : siteIds) {
+            result[i++] = get(siteId);
+        }
+        return result;
+    }
+
+    public void increment(@NonNull Site site) {
+        generations.computeIfAbsent(site.getId(), id -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -4,8 +4,8 @@ import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.context.ApplicationContext;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
-import org.springframework.transaction.annotation.Transactional;
 import searchengine.config.Site;
 import searchengine.config.SitesList;
 import searchengine.dto.indexing.IndexingResponse;
@@ -16,10 +16,10 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.ForkJoinTask;
-import java.util.stream.Collectors;
-
-import static java.util.concurrent.ForkJoinPool.commonPool;
 
 @Slf4j
 @Service
@@ -29,12 +29,19 @@ public class IndexingServiceImpl implements IndexingService {
     private final SitesList sites;
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
-    private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final PostingsStore postingsStore;
+    private final SegmentStore segmentStore;
+    private final SitePurger sitePurger;
+    private final SearchIndex searchIndex;
+    private final IndexGenerations indexGenerations;
     private final ApplicationContext applicationContext;
+    private final ForkJoinPool crawlerPool;
+    private final ThreadPoolTaskExecutor indexingExecutor;
 
     private static final List<PageAnalyzer> indexingTasks = new ArrayList<>();
     private static boolean indexingCancelling = false; // Для конкретизации сообщений об ошибках
+    private static CompletableFuture<Void> indexingFuture; // Полная индексация вместе с публикацией версий
 
     @Override
     public synchronized IndexingResponse startIndexing() {
@@ -42,8 +49,10 @@ public class IndexingServiceImpl implements IndexingService {
         var urls = siteSettings.stream().map(Site::getUrl).toList();
         var currentSites = siteRepository.findByUrlIn(urls);
 
-        if (!indexingTasks.isEmpty() // На случай перезапуска приложения в процессе индексации
-                && currentSites.stream().anyMatch(site -> site.getStatus() == IndexingStatus.INDEXING)) {
+        var indexingInProcess = indexingFuture != null && !indexingFuture.isDone()
+                || !indexingTasks.isEmpty() // На случай перезапуска приложения в процессе индексации
+                && currentSites.stream().anyMatch(site -> site.getStatus() == IndexingStatus.INDEXING);
+        if (indexingInProcess) {
             var error = indexingCancelling ? "Предыдущая индексация ещё останавливается"
                     : "Индексация уже запущена";
 
@@ -55,7 +64,13 @@ public class IndexingServiceImpl implements IndexingService {
         var rootPages = new ArrayList<Page>();
 
         for (Site site : sites.getSites()) {
+            // Новая версия индекса сайта. Поиск выполняется по опубликованной версии до завершения индексации.
             var newSite = createSite(site);
+            currentSites.stream()
+                    .filter(currentSite -> currentSite.getUrl().equals(site.getUrl()))
+                    .mapToInt(searchengine.model.Site::getVersion)
+                    .max()
+                    .ifPresent(version -> newSite.setVersion(version + 1));
             indexingSites.add(newSite);
 
             var page = createPage(newSite, "/");
@@ -68,30 +83,85 @@ public class IndexingServiceImpl implements IndexingService {
             indexingTasks.add(task);
         }
 
-        getStartIndexingThread(currentSites, indexingSites, rootPages).start();
+        indexingFuture = indexingExecutor.submitCompletable(
+                getStartIndexingTask(currentSites, indexingSites, rootPages));
+        indexingFuture.whenComplete((result, e) -> {
+            if (e != null) {
+                log.error("Ошибка полной индексации", e);
+            }
+        });
 
         return IndexingResponse.builder().result(true).build();
     }
 
-    private Thread getStartIndexingThread(List<searchengine.model.Site> currentSites,
+    private Runnable getStartIndexingTask(List<searchengine.model.Site> currentSites,
                                           ArrayList<searchengine.model.Site> indexingSites, ArrayList<Page> rootPages) {
-        return new Thread(() -> {
+        return () -> {
             log.info("Запуск полной индексации");
             var start = System.currentTimeMillis();
 
-            siteRepository.deleteAll(currentSites);
+            // Неопубликованные версии прежних индексаций, прерванных перезапуском приложения
+            sitePurger.purge(currentSites.stream().filter(site -> !site.isPublished()).toList());
             siteRepository.saveAll(indexingSites);
             pageRepository.saveAll(rootPages);
 
-            indexingTasks.forEach(task -> commonPool().execute(task));
+            indexingTasks.forEach(crawlerPool::execute);
             indexingTasks.forEach(ForkJoinTask::quietlyJoin);
 
             if (indexingCancelling) {
+                indexingSites.forEach(this::saveStopped);
                 log.info("Полная индексации отменена пользователем");
             } else {
                 log.info("Полная индексация выполнена за {} мс.", System.currentTimeMillis() - start);
             }
-        });
+
+            publish(indexingSites);
+        };
+    }
+
+    /**
+     * Публикация версий индекса после полной индексации. Поиск переключается на новую версию сайта одним запросом к
+     * базе данных, после чего прежняя версия удаляется. Версия, индексация которой завершилась ошибкой или была
+     * остановлена, публикуется, только если у сайта нет опубликованной версии. Иначе она удаляется, а поиск
+     * продолжается по прежней версии.
+     *
+     * @param newSites новые версии сайтов
+     */
+    private void publish(List<searchengine.model.Site> newSites) {
+        for (var newSite : newSites) {
+            var publishedSite = siteRepository.findByPublishedTrueAndUrl(newSite.getUrl());
+
+            IndexingStatus status;
+            synchronized (newSite) {
+                status = newSite.getStatus();
+            }
+            if (publishedSite != null && status != IndexingStatus.INDEXED) {
+                log.warn("Версия {} индекса сайта {} не опубликована, поиск выполняется по версии {}: {}",
+                        newSite.getVersion(), newSite.getUrl(), publishedSite.getVersion(), newSite.getLastError());
+                siteRepository.updateLastError(publishedSite.getId(),
+                        "Повторная индексация не завершена: " + newSite.getLastError());
+                sitePurger.purge(newSite);
+                continue;
+            }
+
+            siteRepository.publish(newSite.getId(), newSite.getUrl());
+            log.info("Опубликована версия {} индекса сайта {}", newSite.getVersion(), newSite.getUrl());
+            if (publishedSite != null) {
+                sitePurger.purge(publishedSite);
+            }
+        }
+    }
+
+    private void saveStopped(searchengine.model.Site site) {
+        synchronized (site) {
+            if (site.getStatus() != IndexingStatus.INDEXING) {
+                return;
+            }
+            site.setStatus(IndexingStatus.FAILED);
+            site.setLastError("Индексация остановлена пользователем");
+            site.setStatusTime(LocalDateTime.now());
+            siteRepository.save(site);
+        }
     }
 
     @Override
@@ -106,13 +176,13 @@ public class IndexingServiceImpl implements IndexingService {
         }
 
         indexingCancelling = true;
-        getStopIndexingThread(indexingSites).start();
+        indexingExecutor.execute(getStopIndexingTask(indexingSites));
 
         return IndexingResponse.builder().result(true).build();
     }
 
-    private Thread getStopIndexingThread(List<searchengine.model.Site> indexingSites) {
-        return new Thread(() -> {
+    private Runnable getStopIndexingTask(List<searchengine.model.Site> indexingSites) {
+        return () -> {
             log.info("Запуск остановки полной индексации");
             var start = System.currentTimeMillis();
 
@@ -125,20 +195,27 @@ public class IndexingServiceImpl implements IndexingService {
                 indexingTasks.forEach(ForkJoinTask::quietlyJoin);
             }
 
-            var now = LocalDateTime.now();
-            for (var indexingSite : indexingSites) {
-                synchronized (indexingSite) {
-                    indexingSite.setStatus(IndexingStatus.FAILED);
-                    indexingSite.setLastError("Индексация остановлена пользователем");
-                    indexingSite.setStatusTime(now);
-                    siteRepository.save(indexingSite);
+            var future = indexingFuture;
+            if (future != null && !future.isDone()) {
+                // Статусы версий записывает и версии публикует задача индексации
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                } catch (ExecutionException e) {
+                    // Ошибка уже записана в лог задачей индексации
                 }
+            } else {
+                // Индексация прервана перезапуском приложения: её задач и потока уже нет
+                indexingSites.forEach(this::saveStopped);
+                publish(indexingSites);
             }
 
             indexingTasks.clear(); // Чтобы разрешить запуск нового индексирования
 
             log.info("Полная индексация остановлена за {} мс.", System.currentTimeMillis() - start);
-        });
+        };
     }
 
     @Override
@@ -154,7 +231,11 @@ public class IndexingServiceImpl implements IndexingService {
             return IndexingResponse.builder().result(false).error(error).build();
         }
 
-        var site = siteRepository.findByUrl(configSite.getUrl());
+        // Страница обновляется в опубликованной версии сайта, а до первой публикации - в индексируемой
+        var site = siteRepository.findByPublishedTrueAndUrl(configSite.getUrl());
+        if (site == null) {
+            site = siteRepository.findFirstByUrlOrderByVersionDesc(configSite.getUrl());
+        }
         var newSite = site == null;
 
         Page oldPage = null;
@@ -164,6 +245,7 @@ public class IndexingServiceImpl implements IndexingService {
         if (newSite) {
             // В стандартной ситуации статусом управляет общий процесс. Но т.к. он не запускался, меняем статус.
             site = createSite(configSite);
+            site.setPublished(true);
         } else {
             site.setStatusTime(LocalDateTime.now());
             oldPage = pageRepository.findBySiteAndPath(site, path);
@@ -176,13 +258,13 @@ public class IndexingServiceImpl implements IndexingService {
         }
 
         var newPage = createPage(site, path);
-        getIndexPageThread(oldPage, newPage, newSite).start();
+        indexingExecutor.execute(getIndexPageTask(oldPage, newPage, newSite));
 
         return IndexingResponse.builder().result(true).build();
     }
 
-    private Thread getIndexPageThread(Page oldPage, @NonNull Page newPage, boolean newSite) {
-        return new Thread(() -> {
+    private Runnable getIndexPageTask(Page oldPage, @NonNull Page newPage, boolean newSite) {
+        return () -> {
             var url = newPage.getUrl();
 
             log.info("Запуск индексации страницы {}", url);
@@ -206,7 +288,7 @@ public class IndexingServiceImpl implements IndexingService {
             }
 
             log.info("Индексации страницы {} выполнена за {} мс.", url, System.currentTimeMillis() - start);
-        });
+        };
     }
 
     private searchengine.model.Site createSite(@NonNull Site site) {
@@ -241,27 +323,22 @@ public class IndexingServiceImpl implements IndexingService {
         return configSite;
     }
 
-    // Удаление Page, Lemma, Index в соответствии с ТЗ
-    @Transactional
+    // Удаление Page, Lemma, Index в соответствии с ТЗ. Выполняется запросами к наборам строк.
     private void deleteLeLemmatizationInfo(Page page) {
         // Можно было бы синхронизировать по Page, но в случае возникновении ошибки записи Page нет гарантии, что
         // в репозитории ещё не изменилась информация по Lemma.
         synchronized (page.getSite()) {
-            var checkingLemmas = indexRepository.findByPage(page).stream()
-                    .map(Index::getLemma)
-                    .collect(Collectors.groupingBy(lemma -> lemma.getFrequency() > 1));
-
-            var deletingLemmas = checkingLemmas.getOrDefault(false, Collections.emptyList());
-
-            var changedLemmas = checkingLemmas.getOrDefault(true, Collections.emptyList());
-            for (var lemma : changedLemmas) {
-                var frequency = lemma.getFrequency() - 1;
-                lemma.setFrequency(frequency);
-            }
-
-            lemmaRepository.deleteAll(deletingLemmas);
-            lemmaRepository.saveAll(changedLemmas);
-            pageRepository.delete(page);
+            var indexes = indexRepository.findByPage(page);
+            var lemmaIds = indexes.stream()
+                    .map(index -> index.getLemma().getId())
+                    .distinct()
+                    .toList();
+
+            sitePurger.purgePage(page, lemmaIds);
+            postingsStore.append(indexes, Collections.emptyList());
+            segmentStore.append(indexes, Collections.emptyList());
+            searchIndex.removePage(page);
+            indexGenerations.increment(page.getSite());
         }
     }
 
@@ -0,0 +1,123 @@
+package searchengine.services;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.index.FuzzyIndex;
+import searchengine.index.SuggestionIndex;
+import searchengine.model.LemmaFrequency;
+import searchengine.model.LemmaRepository;
+import searchengine.model.Site;
+import searchengine.model.SiteRepository;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+/**
+ * Словари лемм сайтов в памяти: подсказки по началу слова и исправление опечаток. Словари подсказок опубликованных
+ * сайтов строятся в фоне при запуске и после публикации сайта, словарь исправлений - при первом нечётком поиске по
+ * сайту. Обращение к сайту, словарь которого ещё не построен, строит его сразу и ожидает базу данных. Словари
+ * перестраиваются в фоне, если индекс сайта изменился. До окончания перестроения используется прежний словарь.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class LemmaDictionaries {
+
+    private final SearchSettings searchSettings;
+    private final SiteRepository siteRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexGenerations indexGenerations;
+
+    private final Map<Integer, Dictionary> sites = new ConcurrentHashMap<>();
+    private final Object buildLock = new Object();
+
+    public SuggestionIndex getSuggestions(@NonNull Site site) {
+        return get(site, false).suggestions();
+    }
+
+    public FuzzyIndex getCorrections(@NonNull Site site) {
+        return get(site, true).corrections();
+    }
+
+    private Dictionary get(Site site, boolean corrections) {
+        var dictionary = sites.get(site.getId());
+        if (dictionary == null || corrections && dictionary.corrections() == null) {
+            synchronized (buildLock) {
+                dictionary = sites.get(site.getId());
+                if (dictionary == null || corrections && dictionary.corrections() == null) {
+                    dictionary = build(site, corrections);
+                    sites.put(site.getId(), dictionary);
+                }
+            }
+        }
+
+        return dictionary;
+    }
+
+    /**
+     * Строит словари опубликованных сайтов, у которых их ещё нет, и перестраивает словари сайтов, индекс которых
+     * изменился после построения словаря. Словари других сайтов не затрагиваются. Первый запуск - при запуске
+     * приложения.
+     */
+    @Scheduled(fixedDelayString = "${search-settings.suggest-refresh-interval:30000}")
+    public void refresh() {
+        var existingSites = new HashMap<Integer, Site>();
+        siteRepository.findAll().forEach(site -> existingSites.put(site.getId(), site));
+        sites.keySet().retainAll(existingSites.keySet()); // Удалённые сайты
+
+        // Первый запрос подсказок по сайту не ожидает построения словаря
+        for (var site : existingSites.values()) {
+            if (site.isPublished() && !sites.containsKey(site.getId())) {
+                var dictionary = build(site, false);
+                synchronized (buildLock) {
+                    sites.putIfAbsent(site.getId(), dictionary);
+                }
+            }
+        }
+
+        for (var entry : sites.entrySet()) {
+            if (entry.getValue().generation() == indexGenerations.get(entry.getKey())) {
+                continue;
+            }
+
+            var site = existingSites.get(entry.getKey());
+            var dictionary = build(site, entry.getValue().corrections() != null);
+            synchronized (buildLock) {
+                // Сайт мог быть удалён во время построения
+                sites.computeIfPresent(site.getId(), (id, previous) -> dictionary);
+            }
+        }
+    }
+
+    private Dictionary build(Site site, boolean corrections) {
+        var start = System.currentTimeMillis();
+        // Номер поколения читается до лемм: изменения во время чтения вызовут повторное построение
+        var generation = indexGenerations.get(site.getId());
+
+        var frequencies = lemmaRepository.findFrequenciesBySite(site.getId()).stream()
+                .collect(Collectors.toMap(LemmaFrequency::getLemma, LemmaFrequency::getFrequency, Integer::sum));
+        var suggestions = new SuggestionIndex(frequencies, searchSettings.getSuggestSize());
+        var fuzzyIndex = corrections ? new FuzzyIndex(frequencies, searchSettings.getFuzzyMaxDistance()) : null;
+
+        log.info("Словарь лемм сайта {} построен за {} мс. Лемм: {}, узлов подсказок с отбором: {}, удалений для "
+                        + "исправления опечаток: {}.", site.getUrl(), System.currentTimeMillis() - start,
+                suggestions.lemmasCount(), suggestions.nodesCount(),
+                fuzzyIndex == null ? 0 : fuzzyIndex.deletesCount());
+
+        return new Dictionary(generation, suggestions, fuzzyIndex);
+    }
+
+    /**
+     * @param generation  номер поколения индекса сайта, по которому построен словарь
+     * @param suggestions словарь подсказок
+     * @param corrections словарь исправлений или null, если нечёткий поиск по сайту не выполнялся
+     */
+    private record Dictionary(long generation, SuggestionIndex suggestions, FuzzyIndex corrections) {
+    }
+}
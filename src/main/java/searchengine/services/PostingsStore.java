@@ -0,0 +1,334 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.data.util.Streamable;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexStorageSettings;
+import searchengine.config.Workload;
+import searchengine.index.PostingList;
+import searchengine.index.PostingListBuilder;
+import searchengine.index.PostingsCodec;
+import searchengine.model.*;
+
+import java.util.*;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Хранилище сжатых списков вхождений лемм (таблица postings). Изменения индексов страниц накапливаются в памяти и
+ * периодически сливаются со списками в базе данных. При чтении накопленные изменения учитываются сразу.
+ * <p>
+ * Источником данных для анализа страниц остаётся таблица indexes. Списки вхождений строятся из неё при первом запуске и
+ * далее поддерживаются в актуальном состоянии. Накопленные изменения сливаются и при остановке приложения. Если
+ * изменения всё же потеряны (аварийное завершение) или построение было прервано, количество вхождений в postings не
+ * совпадёт с количеством строк indexes, и при запуске списки строятся заново.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class PostingsStore {
+
+    private static final int BUILD_CHUNK_SIZE = 500; // Количество лемм, индексы которых читаются одним запросом
+    private static final long BUILD_RETRY_DELAY = 60_000; // Пауза перед повтором неудавшегося построения, мс
+
+    private final IndexStorageSettings settings;
+    private final SiteRepository siteRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final PostingsRepository postingsRepository;
+
+    private final Object lock = new Object(); // Для накапливаемых изменений
+    private final Object mergeLock = new Object(); // Для записи списков в базу данных
+    // Лемма -> изменения по страницам: ранг или null для удаления
+    private Map<Integer, SortedMap<Integer, Float>> pending = new HashMap<>();
+    private Map<Integer, SortedMap<Integer, Float>> merging = Collections.emptyMap(); // Сливаемые в данный момент
+    private long mergedBatches; // Количество записанных в базу данных слияний - для согласованного чтения
+    private volatile boolean ready;
+
+    public boolean isEnabled() {
+        return settings.isPostings();
+    }
+
+    // Списки построены и соответствуют таблице indexes
+    public boolean isReady() {
+        return isEnabled() && ready;
+    }
+
+    /**
+     * Регистрирует изменения индексов одной страницы
+     *
+     * @param deletedIndexes удалённые индексы
+     * @param savedIndexes   добавленные или изменённые индексы. Леммы должны быть уже записаны в базу данных.
+     */
+    public void append(Collection<Index> deletedIndexes, Collection<Index> savedIndexes) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (lock) {
+            for (var index : deletedIndexes) {
+                getPendingChanges(index).put(index.getPage().getId(), null);
+            }
+            for (var index : savedIndexes) {
+                getPendingChanges(index).put(index.getPage().getId(), index.getRank());
+            }
+        }
+    }
+
+    private SortedMap<Integer, Float> getPendingChanges(Index index) {
+        return pending.computeIfAbsent(index.getLemma().getId(), id -> new TreeMap<>());
+    }
+
+    /**
+     * Читает списки вхождений лемм с учётом ещё не слитых изменений. Каждый список - одна строка таблицы.
+     *
+     * @param lemmaIds идентификаторы лемм
+     * @return соответствие идентификатора леммы и списка вхождений. Для лемм без вхождений - пустой список.
+     */
+    public Map<Integer, PostingList> read(Collection<Integer> lemmaIds) {
+        while (true) {
+            long batches;
+            synchronized (lock) {
+                batches = mergedBatches;
+            }
+
+            var result = new HashMap<Integer, PostingList>();
+            for (var postings : postingsRepository.findAllById(lemmaIds)) {
+                result.put(postings.getId(), PostingsCodec.decode(postings.getData()));
+            }
+
+            synchronized (lock) {
+                if (batches != mergedBatches) {
+                    // Во время чтения слияние записано в базу данных: прочитанные строки могут не содержать
+                    // изменений, которых уже нет среди сливаемых. Чтение повторяется.
+                    continue;
+                }
+
+                for (var lemmaId : lemmaIds) {
+                    var postings = result.getOrDefault(lemmaId, PostingList.empty());
+                    // Сначала более ранние изменения, затем более поздние
+                    postings = postings.merge(merging.getOrDefault(lemmaId, Collections.emptySortedMap()));
+                    postings = postings.merge(pending.getOrDefault(lemmaId, Collections.emptySortedMap()));
+                    result.put(lemmaId, postings);
+                }
+                return result;
+            }
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${index-storage-settings.merge-interval:60000}")
+    public void merge() {
+        if (!isReady()) {
+            return; // До окончания построения изменения только накапливаются
+        }
+
+        Map<Integer, SortedMap<Integer, Float>> batch;
+        synchronized (lock) {
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            merging = batch;
+            pending = new HashMap<>();
+        }
+
+        var start = System.currentTimeMillis();
+        try {
+            synchronized (mergeLock) {
+                mergeBatch(batch);
+            }
+        } catch (RuntimeException e) {
+            log.error("Не удалось слить изменения списков вхождений: {}", e.getLocalizedMessage());
+            restore(batch);
+            return;
+        }
+        synchronized (lock) {
+            merging = Collections.emptyMap();
+            mergedBatches++;
+        }
+
+        log.info("Слияние изменений {} списков вхождений выполнено за {} мс.", batch.size(),
+                System.currentTimeMillis() - start);
+        reportStorageSize();
+    }
+
+    @PreDestroy
+    public void close() {
+        merge();
+    }
+
+    // Возврат изменений, которые не удалось слить. Более поздние изменения тех же страниц сохраняются.
+    private void restore(Map<Integer, SortedMap<Integer, Float>> batch) {
+        synchronized (lock) {
+            batch.forEach((lemmaId, changes) -> {
+                var newerChanges = pending.get(lemmaId);
+                if (newerChanges != null) {
+                    changes.putAll(newerChanges);
+                }
+                pending.put(lemmaId, changes);
+            });
+            merging = Collections.emptyMap();
+        }
+    }
+
+    private void mergeBatch(Map<Integer, SortedMap<Integer, Float>> batch) {
+        var lemmas = Streamable.of(lemmaRepository.findAllById(batch.keySet())).stream()
+                .collect(Collectors.toMap(Lemma::getId, Function.identity()));
+        var existingPostings = Streamable.of(postingsRepository.findAllById(batch.keySet())).stream()
+                .collect(Collectors.toMap(Postings::getId, Function.identity()));
+
+        for (var entry : batch.entrySet()) {
+            var lemma = lemmas.get(entry.getKey());
+            if (lemma == null) {
+                continue; // Лемма удалена вместе с её вхождениями
+            }
+
+            var postings = existingPostings.get(entry.getKey());
+            var postingList = postings == null ? PostingList.empty() : PostingsCodec.decode(postings.getData());
+            postingList = postingList.merge(entry.getValue());
+
+            try {
+                if (postingList.isEmpty()) {
+                    if (postings != null) {
+                        postingsRepository.delete(postings);
+                    }
+                    continue;
+                }
+
+                if (postings == null) {
+                    postings = new Postings();
+                    postings.setLemma(lemma);
+                }
+                postings.setCount(postingList.size());
+                postings.setData(PostingsCodec.encode(postingList));
+                postingsRepository.save(postings);
+            } catch (RuntimeException e) {
+                if (lemmaRepository.existsById(lemma.getId())) {
+                    throw e; // Слияние пакета повторяется
+                }
+                // Лемма удалена после чтения. Её вхождения удалены каскадно и сохранять нечего.
+                log.debug("Лемма {} удалена во время слияния списков вхождений", lemma.getLemma());
+            }
+        }
+    }
+
+    /**
+     * Проверка согласованности списков с таблицей indexes: количество вхождений во всех списках должно совпадать с
+     * количеством строк indexes. Иначе (первый запуск, прерванное построение, потерянные изменения) списки строятся
+     * заново. Изменения, зарегистрированные во время построения, сливаются после него. Неудавшееся построение
+     * повторяется через BUILD_RETRY_DELAY.
+     */
+    @EventListener(ApplicationReadyEvent.class)
+    public void buildIfInconsistent() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        var postingsCount = postingsRepository.sumPostingsCount();
+        var indexesCount = indexRepository.count();
+        if (postingsCount == indexesCount) {
+            ready = true;
+            return;
+        }
+        log.warn("Количество вхождений в списках ({}) не совпадает с количеством индексов ({})", postingsCount,
+                indexesCount);
+
+        // Построение читает всю таблицу indexes, поэтому использует пул соединений индексации
+        var thread = new Thread(Workload.INDEXING.wrap(this::buildAll), "postings-build");
+        thread.setDaemon(true); // Ожидание повтора не задерживает остановку приложения
+        thread.start();
+    }
+
+    private void buildAll() {
+        while (true) {
+            log.info("Запуск построения сжатых списков вхождений");
+            var start = System.currentTimeMillis();
+
+            try {
+                synchronized (mergeLock) {
+                    postingsRepository.deleteAllPostings();
+                    for (var site : siteRepository.findAll()) {
+                        build(site);
+                    }
+                    ready = true;
+                }
+
+                log.info("Сжатые списки вхождений построены за {} мс.", System.currentTimeMillis() - start);
+                reportStorageSize();
+                return;
+            } catch (RuntimeException e) {
+                log.error("Не удалось построить сжатые списки вхождений, повтор через {} мс: {}", BUILD_RETRY_DELAY,
+                        e.getLocalizedMessage());
+            }
+
+            // Накопленные изменения уже есть в таблице indexes и будут прочитаны повторным построением
+            synchronized (lock) {
+                pending = new HashMap<>();
+            }
+
+            try {
+                Thread.sleep(BUILD_RETRY_DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    private void build(Site site) {
+        var lemmas = lemmaRepository.findBySiteIn(List.of(site));
+        var builder = new PostingListBuilder();
+
+        for (var from = 0; from < lemmas.size(); from += BUILD_CHUNK_SIZE) {
+            var chunk = lemmas.subList(from, Math.min(from + BUILD_CHUNK_SIZE, lemmas.size())).stream()
+                    .collect(Collectors.toMap(Lemma::getId, Function.identity()));
+            var rows = indexRepository.findPostings(chunk.keySet());
+
+            var newPostings = new ArrayList<Postings>(chunk.size());
+            var currentLemmaId = -1;
+            for (var row : rows) {
+                if (row.getLemmaId() != currentLemmaId && builder.size() > 0) {
+                    newPostings.add(createPostings(chunk.get(currentLemmaId), builder.build()));
+                }
+                currentLemmaId = row.getLemmaId();
+                builder.add(row.getPageId(), row.getRank());
+            }
+            if (builder.size() > 0) {
+                newPostings.add(createPostings(chunk.get(currentLemmaId), builder.build()));
+            }
+
+            postingsRepository.saveAll(newPostings);
+        }
+    }
+
+    private Postings createPostings(Lemma lemma, PostingList postingList) {
+        var postings = new Postings();
+        postings.setLemma(lemma);
+        postings.setCount(postingList.size());
+        postings.setData(PostingsCodec.encode(postingList));
+
+        return postings;
+    }
+
+    // Сравнение размера хранения индекса в виде строк indexes и в виде сжатых списков
+    private void reportStorageSize() {
+        try {
+            var indexesSize = postingsRepository.getTableSize("indexes");
+            var postingsSize = postingsRepository.getTableSize("postings");
+            var dataSize = postingsRepository.sumDataLength();
+            var count = postingsRepository.sumPostingsCount();
+            var ratio = postingsSize == 0 ? 0 : (double) indexesSize / postingsSize;
+
+            log.info("Размер индекса: таблица indexes - {} байт, таблица postings - {} байт (сжатые данные - {} байт, "
+                            + "{} вхождений). Уменьшение в {} раз.",
+                    indexesSize, postingsSize, dataSize, count, String.format("%.1f", ratio));
+        } catch (Exception e) {
+            log.warn("Не удалось определить размер индекса: {}", e.getLocalizedMessage());
+        }
+    }
+}
@@ -0,0 +1,64 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.ReplicaReads;
+import searchengine.config.ReplicaSettings;
+import searchengine.model.IndexingStatus;
+import searchengine.model.Site;
+
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.function.Supplier;
+
+/**
+ * Выбор базы данных для чтения индекса сайтов: реплика (replica-settings) или основная база данных. Реплика отстаёт
+ * от основной базы данных, поэтому данные сайта, который индексируется или изменялся позднее replica-settings.max-lag
+ * назад, читаются из основной базы данных. Сами сайты перед этим читаются из основной базы данных: по ним выбирается
+ * опубликованная версия индекса.
+ */
+@Slf4j
+@Service
+public class ReplicaRouting {
+
+    private final ReplicaSettings settings;
+    private final Counter replicaReads;
+    private final Counter primaryReads;
+
+    public ReplicaRouting(ReplicaSettings settings, MeterRegistry registry) {
+        this.settings = settings;
+
+        replicaReads = Counter.builder("datasource.reads").tag("target", "replica")
+                .description("Чтения индекса, для которых выбрана реплика или основная база данных").register(registry);
+        primaryReads = Counter.builder("datasource.reads").tag("target", "primary")
+                .description("Чтения индекса, для которых выбрана реплика или основная база данных").register(registry);
+    }
+
+    /**
+     * @param sites  сайты, данные которых читаются
+     * @param action чтение: запросы без транзакции и в транзакциях только для чтения выполняются в реплике, если она
+     *               задана и ни один из сайтов не изменялся недавно
+     */
+    public <T> T read(Collection<Site> sites, Supplier<T> action) {
+        if (!settings.isEnabled()) {
+            return action.get();
+        }
+
+        var changedAfter = LocalDateTime.now().minus(settings.getMaxLag());
+        var recentlyChanged = sites.stream()
+                .filter(site -> site.getStatus() == IndexingStatus.INDEXING
+                        || site.getStatusTime() == null || site.getStatusTime().isAfter(changedAfter))
+                .findFirst();
+        if (recentlyChanged.isPresent()) {
+            log.debug("Сайт {} изменён недавно, чтение выполняется в основной базе данных",
+                    recentlyChanged.get().getUrl());
+            primaryReads.increment();
+            return action.get();
+        }
+
+        replicaReads.increment();
+        return ReplicaReads.call(action);
+    }
+}
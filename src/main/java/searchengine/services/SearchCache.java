@@ -0,0 +1,204 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchData;
+import searchengine.model.Site;
+
+import java.util.*;
+
+/**
+ * Кеш результатов поиска. Ключ - нормализованный набор лемм запроса, набор сайтов и диапазон вывода (сдвиг или
+ * курсор). Значение -
+ * идентификаторы страниц диапазона, готовые элементы ответа и общее количество найденных страниц.
+ * <p>
+ * Вместе с результатом хранятся номера поколений индексов сайтов ({@link IndexGenerations}), прочитанные до начала
+ * поиска. Результат выдаётся, только если ни один из сайтов с тех пор не изменился, иначе удаляется. Объём кеша
+ * ограничен настройкой search-settings.cache-memory: при превышении удаляются давно не использованные результаты.
+ */
+@Slf4j
+@Service
+public class SearchCache {
+
+    private static final long ENTRY_OVERHEAD = 256; // Ключ, записи LinkedHashMap, массивы и списки результата
+    private static final long SEARCH_DATA_OVERHEAD = 48 + 5 * 40; // Объект и заголовки пяти строк
+
+    private final SearchSettings settings;
+    private final IndexGenerations indexGenerations;
+    private final Counter hits;
+    private final Counter misses;
+    private final Counter evictions;
+
+    private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true); // Порядок использования
+    private long memory;
+
+    public SearchCache(SearchSettings settings, IndexGenerations indexGenerations, MeterRegistry registry) {
+        this.settings = settings;
+        this.indexGenerations = indexGenerations;
+
+        hits = Counter.builder("search.cache.requests").tag("result", "hit")
+                .description("Запросы к кешу результатов поиска").register(registry);
+        misses = Counter.builder("search.cache.requests").tag("result", "miss")
+                .description("Запросы к кешу результатов поиска").register(registry);
+        evictions = Counter.builder("search.cache.evictions")
+                .description("Результаты, удалённые из-за ограничения объёма или изменения индекса").register(registry);
+        Gauge.builder("search.cache.hit.ratio", this, SearchCache::getHitRatio)
+                .description("Доля запросов, выполненных из кеша").register(registry);
+        Gauge.builder("search.cache.entries", this, SearchCache::size).register(registry);
+        Gauge.builder("search.cache.memory", this, SearchCache::getMemory).baseUnit("bytes").register(registry);
+    }
+
+    public boolean isEnabled() {
+        return settings.getCacheMemory().toBytes() > 0;
+    }
+
+    /**
+     * @param key ключ запроса
+     * @return номера поколений индексов сайтов ключа. Читаются до начала поиска и передаются в {@link #put}.
+     */
+    public long[] getGenerations(@NonNull Key key) {
+        return indexGenerations.get(key.siteIds());
+    }
+
+    /**
+     * @param key ключ запроса
+     * @return актуальный результат или null
+     */
+    public Result get(@NonNull Key key) {
+        if (!isEnabled()) {
+            return null;
+        }
+
+        var generations = getGenerations(key);
+        synchronized (entries) {
+            var entry = entries.get(key);
+            if (entry != null && !Arrays.equals(entry.generations(), generations)) {
+                remove(key);
+                entry = null;
+            }
+
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+
+            hits.increment();
+            return entry.result();
+        }
+    }
+
+    /**
+     * @param key         ключ запроса
+     * @param generations номера поколений, прочитанные до начала поиска
+     * @param result      результат
+     */
+    public void put(@NonNull Key key, @NonNull long[] generations, @NonNull Result result) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        var budget = settings.getCacheMemory().toBytes();
+        var weight = estimateMemory(key, result);
+        if (weight > budget) {
+            return;
+        }
+
+        synchronized (entries) {
+            var previous = entries.put(key, new Entry(generations, result, weight));
+            if (previous != null) {
+                memory -= previous.weight();
+            }
+            memory += weight;
+
+            var iterator = entries.entrySet().iterator();
+            while (memory > budget && iterator.hasNext()) {
+                memory -= iterator.next().getValue().weight();
+                iterator.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    private void remove(Key key) {
+        var entry = entries.remove(key);
+        if (entry != null) {
+            memory -= entry.weight();
+            evictions.increment();
+        }
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getMemory() {
+        synchronized (entries) {
+            return memory;
+        }
+    }
+
+    public double getHitRatio() {
+        var total = hits.count() + misses.count();
+        return total == 0 ? 0 : hits.count() / total;
+    }
+
+    private static long estimateMemory(Key key, Result result) {
+        var bytes = ENTRY_OVERHEAD;
+        for (var lemma : key.lemmas()) {
+            bytes += 40 + 2L * lemma.length();
+        }
+        bytes += 16L * key.siteIds().size() + 16L * result.pageIds().size();
+        bytes += result.prunedLemmas() == null ? 0 : 8L * result.prunedLemmas().size(); // Строки общие с ключом
+        bytes += 2L * (length(key.cursor()) + length(result.cursor()));
+
+        for (var data : result.data()) {
+            bytes += SEARCH_DATA_OVERHEAD + 2L * (length(data.getSite()) + length(data.getSiteName())
+                    + length(data.getUri()) + length(data.getTitle()) + length(data.getSnippet()));
+        }
+
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    /**
+     * Ключ запроса. Леммы и идентификаторы сайтов упорядочены, поэтому порядок слов в запросе и порядок сайтов не
+     * влияют на ключ.
+     */
+    public record Key(List<String> lemmas, List<Integer> siteIds, int limit, int offset, String cursor) {
+
+        public static Key of(Collection<String> lemmas, Collection<Site> sites, int limit, int offset,
+                             String cursor) {
+            var siteIds = sites.stream().map(Site::getId).distinct().sorted().toList();
+            return new Key(lemmas.stream().sorted().toList(), siteIds, limit, offset, cursor);
+        }
+
+        // Хеш запроса без учёта диапазона вывода
+        public int queryHash() {
+            return Objects.hash(lemmas, siteIds);
+        }
+    }
+
+    /**
+     * @param pageIds      идентификаторы страниц диапазона вывода по убыванию релевантности
+     * @param data         элементы ответа
+     * @param count        общее количество найденных страниц
+     * @param cursor       курсор следующей страницы или null
+     * @param maxRelevance абсолютная релевантность первого результата, по которой нормирована релевантность
+     */
+    public record Result(List<Integer> pageIds, List<SearchData> data, int count, String cursor,
+                         List<String> prunedLemmas, double maxRelevance) {
+    }
+
+    private record Entry(long[] generations, Result result, long weight) {
+    }
+}
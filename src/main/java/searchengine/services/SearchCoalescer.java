@@ -0,0 +1,104 @@
+package searchengine.services;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import lombok.NonNull;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.dto.search.SearchResponse;
+import searchengine.index.Deadline;
+
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.function.Supplier;
+
+/**
+ * Объединение одинаковых одновременных поисковых запросов: пока запрос с тем же ключом выполняется, остальные ожидают
+ * его результат вместо повторного расчёта.
+ * <p>
+ * Запрос ожидает не дольше search-settings.coalescing-timeout и не дольше своего оставшегося времени. Запрос, не
+ * дождавшийся результата, или расчёт которого был отменён, выполняется самостоятельно. Частичный результат (время
+ * выполнявшегося запроса истекло раньше) тоже не передаётся: у ожидающего запроса может быть больше времени, и он
+ * выполняется в его пределах. Ошибка расчёта передаётся всем ожидающим. Прерывание ожидающего потока прерывает только
+ * его ожидание.
+ */
+@Slf4j
+@Service
+public class SearchCoalescer {
+
+    private final SearchSettings settings;
+    private final Counter coalesced;
+    private final Counter timeouts;
+
+    private final Map<SearchCache.Key, CompletableFuture<SearchResponse>> inFlight = new ConcurrentHashMap<>();
+
+    public SearchCoalescer(SearchSettings settings, MeterRegistry registry) {
+        this.settings = settings;
+
+        coalesced = Counter.builder("search.coalesced")
+                .description("Запросы, получившие результат одновременного одинакового запроса").register(registry);
+        timeouts = Counter.builder("search.coalesced.timeouts")
+                .description("Запросы, не дождавшиеся результата одинакового запроса").register(registry);
+    }
+
+    /**
+     * Выполняет поиск или присоединяется к уже выполняющемуся поиску с тем же ключом
+     *
+     * @param key      ключ запроса
+     * @param deadline срок запроса, ограничивающий ожидание
+     * @param search   расчёт результата
+     * @return результат поиска
+     */
+    public SearchResponse execute(@NonNull SearchCache.Key key, @NonNull Deadline deadline,
+                                  @NonNull Supplier<SearchResponse> search) {
+        var future = new CompletableFuture<SearchResponse>();
+        var running = inFlight.putIfAbsent(key, future);
+
+        if (running == null) {
+            return compute(key, future, search);
+        }
+
+        try {
+            var waitNanos = Math.min(settings.getCoalescingTimeout().toNanos(), deadline.remainingNanos());
+            var response = running.get(waitNanos, TimeUnit.NANOSECONDS);
+            if (Boolean.TRUE.equals(response.getPartial())) {
+                log.debug("Результат одинакового запроса частичный, поиск выполняется отдельно");
+                return search.get();
+            }
+            coalesced.increment();
+            return response;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Ожидание результата поиска прервано");
+        } catch (ExecutionException e) {
+            coalesced.increment();
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw new CompletionException(e.getCause());
+        } catch (TimeoutException | CancellationException e) {
+            timeouts.increment();
+            log.debug("Результат одинакового запроса не получен ({}), поиск выполняется отдельно", e.toString());
+            return search.get();
+        }
+    }
+
+    private SearchResponse compute(SearchCache.Key key, CompletableFuture<SearchResponse> future,
+                                   Supplier<SearchResponse> search) {
+        try {
+            var response = search.get();
+            future.complete(response);
+            return response;
+        } catch (RuntimeException | Error e) {
+            future.completeExceptionally(e);
+            throw e;
+        } finally {
+            // Новые запросы после завершения расчёта выполняются заново (или берутся из кеша)
+            inFlight.remove(key, future);
+            if (!future.isDone()) {
+                future.cancel(false);
+            }
+        }
+    }
+}
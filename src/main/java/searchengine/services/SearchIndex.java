@@ -0,0 +1,147 @@
+package searchengine.services;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Service;
+import searchengine.config.RelevanceMode;
+import searchengine.config.SearchSettings;
+import searchengine.config.Workload;
+import searchengine.index.PostingListBuilder;
+import searchengine.index.SiteIndex;
+import searchengine.model.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Инвертированный индекс всех сайтов в памяти. Загружается из таблицы indexes при запуске приложения и далее
+ * обновляется при анализе и удалении страниц. Используется при способе расчёта релевантности MEMORY: поиск обращается
+ * к базе данных только за найденными страницами.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SearchIndex {
+
+    private static final int LOAD_CHUNK_SIZE = 500; // Количество лемм, индексы которых читаются одним запросом
+
+    private final SearchSettings searchSettings;
+    private final SiteRepository siteRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+
+    private final Map<Integer, SiteIndex> sites = new ConcurrentHashMap<>();
+
+    public boolean isEnabled() {
+        return searchSettings.getRelevanceMode() == RelevanceMode.MEMORY;
+    }
+
+    /**
+     * @param site сайт
+     * @return загруженный индекс сайта или null, если индекс ещё не готов и поиск нужно выполнить другим способом
+     */
+    public SiteIndex get(@NonNull Site site) {
+        var siteIndex = sites.get(site.getId());
+        return siteIndex != null && siteIndex.isReady() ? siteIndex : null;
+    }
+
+    /**
+     * Заменяет вхождения страницы
+     *
+     * @param page   страница
+     * @param lemmas леммы страницы и их ранги
+     */
+    public void updatePage(@NonNull Page page, @NonNull Map<String, Integer> lemmas) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        // Индекс сайта, которого не было при загрузке, не требует загрузки: у нового сайта нет сохранённых страниц
+        sites.computeIfAbsent(page.getSite().getId(), id -> new SiteIndex(true)).updatePage(page.getId(), lemmas);
+    }
+
+    public void removePage(@NonNull Page page) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        var siteIndex = sites.get(page.getSite().getId());
+        if (siteIndex != null) {
+            siteIndex.removePage(page.getId());
+        }
+    }
+
+    public void removeSite(@NonNull Site site) {
+        sites.remove(site.getId());
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void load() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        // Индексы создаются до загрузки, чтобы изменения страниц во время загрузки не терялись
+        var siteList = siteRepository.findAll();
+        for (var site : siteList) {
+            sites.putIfAbsent(site.getId(), new SiteIndex(false));
+        }
+
+        // Загрузка читает всю таблицу indexes, поэтому использует пул соединений индексации
+        new Thread(Workload.INDEXING.wrap(() -> {
+            log.info("Запуск загрузки индекса в память");
+            var start = System.currentTimeMillis();
+
+            for (var site : siteList) {
+                var siteIndex = sites.get(site.getId());
+                if (siteIndex == null) {
+                    continue; // Сайт удалён во время загрузки
+                }
+
+                try {
+                    load(site, siteIndex);
+                } catch (Exception e) {
+                    log.error("Не удалось загрузить индекс сайта {}: {}", site.getUrl(), e.getLocalizedMessage());
+                    sites.remove(site.getId(), siteIndex); // Поиск по сайту будет выполняться через базу данных
+                    continue;
+                }
+                siteIndex.finishLoading();
+
+                log.info("Индекс сайта {} загружен: страниц - {}, лемм - {}, вхождений - {}, память - около {} КБ",
+                        site.getUrl(), siteIndex.pagesCount(), siteIndex.lemmasCount(), siteIndex.postingsCount(),
+                        siteIndex.estimateMemory() / 1024);
+            }
+
+            log.info("Индекс загружен в память за {} мс.", System.currentTimeMillis() - start);
+        }), "search-index-load").start();
+    }
+
+    private void load(Site site, SiteIndex siteIndex) {
+        var lemmas = lemmaRepository.findBySiteIn(List.of(site));
+        var builder = new PostingListBuilder();
+
+        for (var from = 0; from < lemmas.size(); from += LOAD_CHUNK_SIZE) {
+            var chunk = lemmas.subList(from, Math.min(from + LOAD_CHUNK_SIZE, lemmas.size())).stream()
+                    .collect(Collectors.toMap(Lemma::getId, Function.identity()));
+            var rows = indexRepository.findPostings(chunk.keySet());
+
+            var currentLemmaId = -1;
+            for (var row : rows) {
+                if (row.getLemmaId() != currentLemmaId && builder.size() > 0) {
+                    siteIndex.load(chunk.get(currentLemmaId).getLemma(), builder.build());
+                }
+                currentLemmaId = row.getLemmaId();
+                builder.add(row.getPageId(), row.getRank());
+            }
+            if (builder.size() > 0) {
+                siteIndex.load(chunk.get(currentLemmaId).getLemma(), builder.build());
+            }
+        }
+    }
+}
@@ -1,8 +1,17 @@
 package searchengine.services;
 
+import searchengine.dto.search.BatchSearchResponse;
+import searchengine.dto.search.SearchQuery;
 import searchengine.dto.search.SearchResponse;
 
+import java.time.Duration;
+import java.util.List;
+
+// receivedAt - время получения запроса (System.nanoTime): timeout отсчитывается от него и включает ожидание допуска
 public interface SearchService {
-    SearchResponse searchSite(String siteUrl, String query, int limit, int offset);
-    SearchResponse searchAllSites(String query, int limit, int offset);
+    SearchResponse searchSite(String siteUrl, String query, int limit, int offset, String cursor, Duration timeout,
+                              boolean fuzzy, long receivedAt);
+    SearchResponse searchAllSites(String query, int limit, int offset, String cursor, Duration timeout, boolean fuzzy,
+                                  long receivedAt);
+    BatchSearchResponse searchBatch(List<SearchQuery> queries, Duration timeout, long receivedAt);
 }
@@ -1,18 +1,38 @@
 package searchengine.services;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.NonNull;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import lombok.val;
 import org.jsoup.Jsoup;
 import org.springframework.context.ApplicationContext;
+import org.springframework.core.task.TaskRejectedException;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
 import org.springframework.stereotype.Service;
+import searchengine.config.RelevanceMode;
+import searchengine.config.SearchSettings;
+import searchengine.config.Shard;
 import searchengine.config.SitesList;
+import searchengine.dto.search.BatchSearchResponse;
+import searchengine.dto.search.SearchCursor;
 import searchengine.dto.search.SearchData;
+import searchengine.dto.search.SearchQuery;
 import searchengine.dto.search.SearchResponse;
+import searchengine.index.Deadline;
+import searchengine.index.FuzzyIndex;
+import searchengine.index.PostingList;
+import searchengine.index.PostingListBuilder;
+import searchengine.index.PostingsIntersection;
+import searchengine.index.TopRelevance;
 import searchengine.model.*;
 
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.*;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -21,13 +41,391 @@ import java.util.stream.Collectors;
 public class SearchServiceImpl implements SearchService {
 
     private final SitesList sitesSettings;
+    private final SearchSettings searchSettings;
     private final ApplicationContext applicationContext;
     private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
     private final IndexRepository indexRepository;
+    private final PostingsStore postingsStore;
+    private final SegmentStore segmentStore;
+    private final ContentStore contentStore;
+    private final SearchIndex searchIndex;
+    private final SearchCache searchCache;
+    private final SearchCoalescer searchCoalescer;
+    private final ShardClient shardClient;
+    private final ReplicaRouting replicaRouting;
+    private final LemmaDictionaries lemmaDictionaries;
+    private final ThreadPoolTaskExecutor searchExecutor;
+    private final MeterRegistry meterRegistry;
 
     @Override
-    public SearchResponse searchSite(@NonNull String siteUrl, @NonNull String query, int limit, int offset) {
+    public SearchResponse searchSite(@NonNull String siteUrl, @NonNull String query, int limit, int offset,
+                                     String cursor, Duration timeout, boolean fuzzy, long receivedAt) {
+        var error = validate(query, limit, offset, timeout);
+        if (error != null) {
+            return SearchResponse.builder().result(false).error(error).build();
+        }
+        var deadline = createDeadline(receivedAt, timeout);
+
+        var shard = shardClient.findShard(siteUrl);
+        if (shard != null) {
+            return searchShard(shard, siteUrl, query, limit, offset, cursor, fuzzy, deadline);
+        }
+
+        var selection = selectSite(siteUrl);
+        if (selection.error() != null) {
+            return SearchResponse.builder().result(false).error(selection.error()).build();
+        }
+
+        return search(selection.sites(), query, limit, offset, cursor, fuzzy, deadline);
+    }
+
+    @Override
+    public SearchResponse searchAllSites(@NonNull String query, int limit, int offset, String cursor,
+                                         Duration timeout, boolean fuzzy, long receivedAt) {
+        var error = validate(query, limit, offset, timeout);
+        if (error != null) {
+            return SearchResponse.builder().result(false).error(error).build();
+        }
+        var deadline = createDeadline(receivedAt, timeout);
+
+        if (shardClient.isEnabled()) {
+            return searchShards(query, limit, offset, cursor, fuzzy, deadline);
+        }
+
+        var selection = selectAllSites();
+        if (selection.error() != null) {
+            return SearchResponse.builder().result(false).error(selection.error()).build();
+        }
+
+        return search(selection.sites(), query, limit, offset, cursor, fuzzy, deadline);
+    }
+
+    // Время отсчитывается от получения запроса и включает ожидание допуска, выбор сайтов, лемматизацию, расчёт
+    // релевантности и сниппеты
+    private Deadline createDeadline(long receivedAt, Duration timeout) {
+        return Deadline.after(receivedAt, timeout == null ? searchSettings.getTimeout() : timeout);
+    }
+
+    // Экземпляр отвечает за оставшееся время запроса за вычетом передачи ответа
+    private Duration getShardTimeout(Deadline deadline) {
+        var shardTimeout = Duration.ofNanos(deadline.remainingNanos()).minus(shardClient.getNetworkReserve());
+        return shardTimeout.isNegative() || shardTimeout.isZero() ? Duration.ofMillis(1) : shardTimeout;
+    }
+
+    // Поиск по сайту другого экземпляра: запрос пересылается ему без изменений, курсор тоже относится к нему
+    private SearchResponse searchShard(Shard shard, String siteUrl, String query, int limit, int offset,
+                                       String cursor, boolean fuzzy, Deadline deadline) {
+        var wait = Duration.ofNanos(Math.max(deadline.remainingNanos(), 1));
+        try {
+            return shardClient.search(shard, siteUrl, query, limit, offset, cursor, fuzzy, getShardTimeout(deadline),
+                    wait).join();
+        } catch (CompletionException | CancellationException e) {
+            log.warn("Экземпляр {} не ответил на поисковый запрос: {}", shard.getUrl(), e.getCause() == null
+                    ? e.toString() : e.getCause().toString());
+            return SearchResponse.builder().result(false).error("Экземпляр, индексирующий сайт, недоступен").build();
+        }
+    }
+
+    /**
+     * Поиск по всем сайтам в режиме координатора (shard-settings.shards). Запрос рассылается всем экземплярам
+     * одновременно, сайты из indexing-settings, не отданные экземплярам, ищутся здесь же. Каждая часть возвращает
+     * первые offset + limit результатов и абсолютную релевантность лучшего из них (maxRelevance): после слияния
+     * релевантность нормируется по общему максимуму, как если бы все сайты были в одном индексе. Экземпляр, не
+     * ответивший за время запроса, в ответ не попадает, а ответ помечается как частичный.
+     */
+    private SearchResponse searchShards(String query, int limit, int offset, String cursor, boolean fuzzy,
+                                        Deadline deadline) {
+        if (cursor != null && !cursor.isBlank()) {
+            return SearchResponse.builder().result(false)
+                    .error("Параметр cursor не поддерживается при поиске по сайтам нескольких экземпляров").build();
+        }
+        var topCount = getTopCount(limit, offset);
+
+        var shardTimeout = getShardTimeout(deadline);
+        var requests = new LinkedHashMap<Shard, CompletableFuture<SearchResponse>>();
+        for (var shard : shardClient.getShards()) {
+            requests.put(shard, shardClient.search(shard, null, query, topCount, 0, null, fuzzy, shardTimeout,
+                    Duration.ofNanos(Math.max(deadline.remainingNanos(), 1))));
+        }
+
+        var parts = new ArrayList<SearchResponse>(requests.size() + 1);
+        var localUrls = sitesSettings.getSites().stream()
+                .map(searchengine.config.Site::getUrl)
+                .filter(url -> shardClient.findShard(url) == null)
+                .toList();
+        if (!localUrls.isEmpty()) {
+            var selection = selectSites(localUrls);
+            parts.add(selection.error() != null
+                    ? SearchResponse.builder().result(false).error(selection.error()).build()
+                    : search(selection.sites(), query, topCount, 0, null, fuzzy, deadline));
+        }
+
+        var partial = false;
+        try {
+            for (var entry : requests.entrySet()) {
+                try {
+                    parts.add(entry.getValue().get(Math.max(deadline.remainingNanos(), 0), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException | ExecutionException e) {
+                    log.warn("Экземпляр {} не ответил на поисковый запрос, его сайты исключены из ответа: {}",
+                            entry.getKey().getUrl(), e.getCause() == null ? e.toString() : e.getCause().toString());
+                    partial = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Поиск прерван");
+        } finally {
+            requests.values().forEach(future -> future.cancel(true));
+        }
+
+        return mergeShardResponses(parts, limit, offset, partial);
+    }
+
+    /**
+     * Слияние ответов экземпляров. Относительная релевантность каждого результата переводится обратно в абсолютную по
+     * maxRelevance его ответа и делится на наибольшую абсолютную релевантность всех ответов. Количество найденных
+     * страниц суммируется, исключённые леммы и исправления опечаток объединяются.
+     *
+     * @param parts   ответы экземпляров с первыми offset + limit результатами
+     * @param partial не все экземпляры ответили за отведённое время
+     */
+    private static SearchResponse mergeShardResponses(List<SearchResponse> parts, int limit, int offset,
+                                                      boolean partial) {
+        for (var part : parts) {
+            if (!part.isResult()) {
+                return part;
+            }
+        }
+
+        var count = 0;
+        var maxRelevance = 0.0;
+        var results = new ArrayList<Map.Entry<SearchData, Double>>();
+        var prunedLemmas = new TreeSet<String>();
+        var corrections = new TreeMap<String, String>();
+        for (var part : parts) {
+            count += part.getCount() == null ? 0 : part.getCount();
+            partial |= Boolean.TRUE.equals(part.getPartial());
+            var partMaxRelevance = part.getMaxRelevance() == null ? 0 : part.getMaxRelevance();
+            maxRelevance = Math.max(maxRelevance, partMaxRelevance);
+            if (part.getData() != null) {
+                part.getData().forEach(data -> results.add(Map.entry(data, data.getRelevance() * partMaxRelevance)));
+            }
+            if (part.getPrunedLemmas() != null) {
+                prunedLemmas.addAll(part.getPrunedLemmas());
+            }
+            if (part.getCorrections() != null) {
+                corrections.putAll(part.getCorrections());
+            }
+        }
+        results.sort(Map.Entry.<SearchData, Double>comparingByValue().reversed());
+
+        var data = new ArrayList<SearchData>(Math.min(limit, results.size()));
+        for (var i = offset; i < results.size() && i - offset < limit; i++) {
+            // Элементы ответа могут быть из кеша результатов, поэтому не изменяются
+            var source = results.get(i).getKey();
+            var searchData = new SearchData();
+            searchData.setSite(source.getSite());
+            searchData.setSiteName(source.getSiteName());
+            searchData.setUri(source.getUri());
+            searchData.setTitle(source.getTitle());
+            searchData.setSnippet(source.getSnippet());
+            searchData.setRelevance((float) (results.get(i).getValue() / maxRelevance));
+            data.add(searchData);
+        }
+
+        return SearchResponse.builder().result(true).count(count).data(data).partial(partial ? true : null)
+                .prunedLemmas(prunedLemmas.isEmpty() ? null : List.copyOf(prunedLemmas))
+                .corrections(corrections.isEmpty() ? null : corrections)
+                .maxRelevance(maxRelevance).build();
+    }
+
+    /**
+     * Пакетный поиск. Запросы пакета выполняются вместе: леммы всех запросов читаются одним запросом к базе данных,
+     * каждый нужный список вхождений читается один раз, страницы и их содержимое для сниппетов - тоже одним запросом.
+     * Результаты, как и при одиночном поиске, кешируются по отдельности. В режиме координатора (shard-settings.shards)
+     * не поддерживается: пакет рассчитывается по одной базе данных.
+     *
+     * @param queries запросы пакета, не больше search-settings.batch-size
+     * @param timeout    время на весь пакет или null - search-settings.timeout
+     * @param receivedAt время получения пакета (System.nanoTime), от которого отсчитывается timeout
+     * @return ответы в порядке запросов. Ошибка в одном запросе не мешает выполнению остальных.
+     */
+    @Override
+    public BatchSearchResponse searchBatch(@NonNull List<SearchQuery> queries, Duration timeout, long receivedAt) {
+        if (shardClient.isEnabled()) {
+            return BatchSearchResponse.builder().result(false)
+                    .error("Пакетный поиск не поддерживается при поиске по сайтам нескольких экземпляров").build();
+        }
+        if (queries.isEmpty()) {
+            return BatchSearchResponse.builder().result(false).error("Не заданы поисковые запросы").build();
+        }
+        if (queries.size() > searchSettings.getBatchSize()) {
+            return BatchSearchResponse.builder().result(false)
+                    .error("Количество запросов в пакете больше " + searchSettings.getBatchSize()).build();
+        }
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            return BatchSearchResponse.builder().result(false).error("Параметр timeoutMs должен быть больше нуля")
+                    .build();
+        }
+        var deadline = createDeadline(receivedAt, timeout);
+        var start = System.currentTimeMillis();
+
+        var responses = new ArrayList<SearchResponse>(Collections.nCopies(queries.size(), null));
+        var prepared = new LinkedHashMap<Integer, PreparedQuery>(); // Номер запроса в пакете -> запрос без кеша
+        SitesSelection allSites = null;
+        for (var i = 0; i < queries.size(); i++) {
+            var query = queries.get(i);
+
+            SitesSelection selection;
+            if (query.getSite() == null || query.getSite().isBlank()) {
+                if (allSites == null) {
+                    allSites = selectAllSites();
+                }
+                selection = allSites;
+            } else {
+                selection = selectSite(query.getSite());
+            }
+
+            var error = selection.error() != null ? selection.error()
+                    : validate(query.getQuery(), query.getLimit(), query.getOffset(), null);
+            var preparedQuery = error != null ? PreparedQuery.error(error)
+                    : prepare(selection.sites(), query.getQuery(), query.getLimit(), query.getOffset(),
+                    query.getCursor(), query.isFuzzy(), deadline);
+            if (preparedQuery.error() != null) {
+                responses.set(i, SearchResponse.builder().result(false).error(preparedQuery.error()).build());
+                continue;
+            }
+
+            var response = getCachedResponse(preparedQuery.task());
+            if (response != null) {
+                responses.set(i, withCorrections(response, preparedQuery.corrections()));
+            } else {
+                prepared.put(i, preparedQuery);
+            }
+        }
+
+        var sites = prepared.values().stream().flatMap(query -> query.task().sites().stream()).distinct().toList();
+        replicaRouting.read(sites, () -> {
+            searchBatch(prepared, responses, deadline);
+            return null;
+        });
+
+        log.info("Пакет из {} поисковых запросов выполнен за {} мс. Рассчитано запросов: {}.", queries.size(),
+                System.currentTimeMillis() - start, prepared.size());
+
+        return BatchSearchResponse.builder().result(true).responses(responses).build();
+    }
+
+    /**
+     * Общий расчёт запросов пакета, которых нет в кеше. В режиме MEMORY релевантность рассчитывается по индексу в
+     * памяти, в остальных режимах - по спискам вхождений: из таблицы postings в режиме POSTINGS, из сегментов индекса в
+     * режиме SEGMENTS, иначе из таблицы indexes одним запросом.
+     *
+     * @param prepared  номер запроса в пакете -> подготовленный запрос
+     * @param responses ответы пакета, заполняются по номерам запросов
+     */
+    private void searchBatch(Map<Integer, PreparedQuery> prepared, List<SearchResponse> responses,
+                             Deadline deadline) {
+        if (prepared.isEmpty()) {
+            return;
+        }
+
+        var tasks = new LinkedHashMap<Integer, SearchTask>();
+        var sites = new LinkedHashMap<Integer, Site>();
+        var lemmasNames = new HashSet<String>();
+        prepared.forEach((i, query) -> {
+            // Поколения индексов читаются до поиска, как при одиночном поиске
+            var task = query.task();
+            tasks.put(i, task.withGenerations(searchCache.getGenerations(task.cacheKey())));
+            task.sites().forEach(site -> sites.putIfAbsent(site.getId(), site));
+            lemmasNames.addAll(task.lemmasNames());
+        });
+
+        if (deadline.isExpired()) {
+            tasks.keySet().forEach(i -> responses.set(i, createExpiredResponse()));
+            return;
+        }
+
+        var relevanceMode = getRelevanceMode(List.copyOf(sites.values())) == RelevanceMode.MEMORY
+                ? RelevanceMode.MEMORY : RelevanceMode.POSTINGS;
+        var plans = planQueries(tasks, sites.values(), lemmasNames, relevanceMode);
+
+        Map<Integer, PostingList> postings = Collections.emptyMap();
+        if (relevanceMode != RelevanceMode.MEMORY && !deadline.isExpired()) {
+            var lemmaIds = getLemmaIds(plans.values().stream().flatMap(plan -> plan.siteLemmas().values().stream())
+                    .toList());
+            if (searchSettings.getRelevanceMode() == RelevanceMode.POSTINGS && postingsStore.isReady()) {
+                postings = postingsStore.read(lemmaIds);
+            } else if (searchSettings.getRelevanceMode() == RelevanceMode.SEGMENTS && segmentStore.isReady()) {
+                postings = segmentStore.read(lemmaIds);
+            } else {
+                postings = readPostings(lemmaIds);
+            }
+        }
+
+        var foundPages = new LinkedHashMap<Integer, FoundPages>();
+        for (var entry : tasks.entrySet()) {
+            var i = entry.getKey();
+            var task = entry.getValue();
+            var plan = plans.get(i);
+            if (plan.isEmpty(relevanceMode)) {
+                responses.set(i, withCorrections(createEmptyResponse(plan), prepared.get(i).corrections()));
+                continue;
+            }
+
+            foundPages.put(i, relevanceMode == RelevanceMode.MEMORY
+                    ? findPagesInMemory(task.sites(), plan.lemmas(), task.window())
+                    : findPagesFromPostings(plan.siteLemmas(), postings, task.window()));
+        }
+
+        var pages = findPages(foundPages.values().stream()
+                .flatMap(found -> found.relevance().stream())
+                .map(Map.Entry::getKey)
+                .collect(Collectors.toSet()));
+        var contents = deadline.isExpired()
+                ? Collections.<Integer, String>emptyMap() : contentStore.load(pages.values());
+
+        foundPages.forEach((i, found) -> {
+            var response = createResponse(tasks.get(i), plans.get(i), found, pages, ignored -> contents);
+            responses.set(i, withCorrections(response, prepared.get(i).corrections()));
+        });
+    }
+
+    // Выбор лемм для каждого запроса пакета. Леммы всех запросов читаются из базы данных одним запросом.
+    private Map<Integer, QueryPlan> planQueries(Map<Integer, SearchTask> tasks, Collection<Site> sites,
+                                                Set<String> lemmasNames, RelevanceMode relevanceMode) {
+        var plans = new HashMap<Integer, QueryPlan>();
+        if (relevanceMode == RelevanceMode.MEMORY) {
+            tasks.forEach((i, task) -> plans.put(i, planQuery(task.sites(), task.lemmasNames(), relevanceMode)));
+            return plans;
+        }
+
+        var lemmas = lemmasNames.isEmpty() ? Collections.<Lemma>emptyList()
+                : lemmaRepository.findBySiteInAndLemmaIn(sites, lemmasNames);
+        var pagesCounts = new HashMap<Integer, Long>(); // Идентификатор сайта -> количество страниц
+        tasks.forEach((i, task) -> {
+            var siteIds = task.sites().stream().map(Site::getId).collect(Collectors.toSet());
+            var taskLemmas = lemmas.stream()
+                    .filter(lemma -> siteIds.contains(lemma.getSite().getId()))
+                    .filter(lemma -> task.lemmasNames().contains(lemma.getLemma()))
+                    .toList();
+
+            var pagesCount = 0L;
+            if (isPruningPossible(task.lemmasNames())) {
+                for (var site : task.sites()) {
+                    pagesCount += pagesCounts.computeIfAbsent(site.getId(), id -> pageRepository.countBySite(site));
+                }
+            }
+
+            plans.put(i, planQuery(task.lemmasNames(), taskLemmas, getFrequencies(taskLemmas), pagesCount));
+        });
+
+        return plans;
+    }
+
+    private SitesSelection selectSite(String siteUrl) {
         if (siteUrl.endsWith("/")) {
             // Далее ожидается формат без слэша на конце
             siteUrl = siteUrl.substring(0, siteUrl.length() - 1);
@@ -38,185 +436,678 @@ public class SearchServiceImpl implements SearchService {
                 .map(searchengine.config.Site::getUrl)
                 .noneMatch(s -> s.equals(url));
         if (notInSettings) {
-            return SearchResponse.builder().result(false).error("Сайт не указан в настройках индексации").build();
+            return SitesSelection.error("Сайт не указан в настройках индексации");
         }
 
-        var site = siteRepository.findByUrl(siteUrl);
+        // Во время повторной индексации поиск выполняется по опубликованной версии сайта
+        var site = siteRepository.findByPublishedTrueAndUrl(siteUrl);
         if (site == null || site.getStatus() == IndexingStatus.INDEXING) {
             // Индексация ещё не выполнена. Failed не учитывается, т.к. это тоже статус "завершения" индексации.
-            return SearchResponse.builder().result(false).error("Индексация сайта ещё не завершена").build();
+            return SitesSelection.error("Индексация сайта ещё не завершена");
         }
 
-        var sites = List.of(site);
-        return search(sites, query, limit, offset);
+        return new SitesSelection(List.of(site), null);
     }
 
-    @Override
-    public SearchResponse searchAllSites(@NonNull String query, int limit, int offset) {
+    private SitesSelection selectAllSites() {
         // Дополнительный отбор на случай изменения состава сайтов в настройках.
-        var sitesInSettings = sitesSettings.getSites().stream()
+        return selectSites(sitesSettings.getSites().stream()
                 .map(searchengine.config.Site::getUrl)
-                .toList();
+                .toList());
+    }
 
-        var sitesInDB = siteRepository.findByUrlIn(sitesInSettings);
+    private SitesSelection selectSites(List<String> sitesInSettings) {
+        var sitesInDB = siteRepository.findByPublishedTrueAndUrlIn(sitesInSettings);
 
         if (sitesInSettings.size() != sitesInDB.size()) {
-            return SearchResponse.builder().result(false).error("Индексация части сайтов из настроек не запускалась")
-                    .build();
+            // Нет опубликованной версии: первая индексация сайта не запускалась или ещё не завершена
+            var indexedUrls = siteRepository.findByUrlIn(sitesInSettings).stream().map(Site::getUrl).distinct().count();
+            return SitesSelection.error(indexedUrls == sitesInSettings.size()
+                    ? "Индексация части сайтов ещё не завершена"
+                    : "Индексация части сайтов из настроек не запускалась");
         }
 
         var indexingInProcess = sitesInDB.stream()
                 .anyMatch(site -> site.getStatus() == IndexingStatus.INDEXING);
         if (indexingInProcess) {
-            return SearchResponse.builder().result(false).error("Индексация части сайтов ещё не завершена").build();
+            return SitesSelection.error("Индексация части сайтов ещё не завершена");
+        }
+
+        return new SitesSelection(sitesInDB, null);
+    }
+
+    // Индекс сайтов читается из реплики, если она задана и сайты не изменялись недавно
+    private SearchResponse search(List<Site> sites, String query, int limit, int offset, String cursor, boolean fuzzy,
+                                  Deadline deadline) {
+        return replicaRouting.read(sites, () -> searchSites(sites, query, limit, offset, cursor, fuzzy, deadline));
+    }
+
+    private SearchResponse searchSites(List<Site> sites, String query, int limit, int offset, String cursor,
+                                       boolean fuzzy, Deadline deadline) {
+        var prepared = prepare(sites, query, limit, offset, cursor, fuzzy, deadline);
+        if (prepared.error() != null) {
+            return SearchResponse.builder().result(false).error(prepared.error()).build();
         }
+        var task = prepared.task();
 
-        return search(sitesInDB, query, limit, offset);
+        var response = getCachedResponse(task);
+        if (response == null) {
+            // Одинаковые одновременные запросы выполняются один раз
+            response = searchCoalescer.execute(task.cacheKey(), deadline, () -> search(task));
+        }
+
+        return withCorrections(response, prepared.corrections());
     }
 
-    private SearchResponse search(List<Site> sites, String query, int limit, int offset) {
+    // Ошибка в параметрах запроса или null
+    private static String validate(String query, int limit, int offset, Duration timeout) {
         if (query == null || query.isBlank()) {
-            return SearchResponse.builder().result(false).error("Задан пустой поисковый запрос").build();
+            return "Задан пустой поисковый запрос";
         }
         if (limit <= 0) {
-            return SearchResponse.builder().result(false).error("Параметр limit должен быть больше нуля").build();
+            return "Параметр limit должен быть больше нуля";
         }
         if (offset < 0) {
-            return SearchResponse.builder().result(false).error("Параметр offset не может быть отрицательным").build();
+            return "Параметр offset не может быть отрицательным";
+        }
+        if (timeout != null && (timeout.isNegative() || timeout.isZero())) {
+            return "Параметр timeoutMs должен быть больше нуля";
+        }
+
+        return null;
+    }
+
+    // Лемматизация, исправление опечаток и проверка курсора
+    private PreparedQuery prepare(List<Site> sites, String query, int limit, int offset, String cursor, boolean fuzzy,
+                                  Deadline deadline) {
+        SearchCursor after = null;
+        if (cursor != null && !cursor.isBlank()) {
+            try {
+                after = SearchCursor.decode(cursor);
+            } catch (IllegalArgumentException e) {
+                return PreparedQuery.error("Некорректный параметр cursor");
+            }
+        }
+
+        var lemmasFinder = applicationContext.getBean(LemmasFinder.class);
+        var queryLemmas = lemmasFinder.findLemmas(query).keySet();
+        var corrections = fuzzy ? correctLemmas(sites, queryLemmas) : Collections.<String, String>emptyMap();
+        var lemmasNames = new HashSet<String>(queryLemmas.size());
+        queryLemmas.forEach(lemma -> lemmasNames.add(corrections.getOrDefault(lemma, lemma)));
+
+        var cacheKey = SearchCache.Key.of(lemmasNames, sites, limit, offset, after == null ? null : cursor);
+        if (after != null && after.queryHash() != cacheKey.queryHash()) {
+            return PreparedQuery.error("Параметр cursor относится к другому поисковому запросу");
+        }
+
+        var window = new Window(limit, offset, after, cacheKey.queryHash(), null, deadline);
+        return new PreparedQuery(new SearchTask(sites, query, lemmasNames, cacheKey, window), corrections, null);
+    }
+
+    private SearchResponse getCachedResponse(SearchTask task) {
+        var cached = searchCache.get(task.cacheKey());
+        if (cached == null) {
+            return null;
         }
 
-        var lemmas = findLemmas(sites, query);
+        log.debug("Результат поиска \"{}\" взят из кеша", task.query());
+        return SearchResponse.builder().result(true).count(cached.count()).data(cached.data())
+                .cursor(cached.cursor()).prunedLemmas(cached.prunedLemmas()).maxRelevance(cached.maxRelevance())
+                .build();
+    }
+
+    // Исправления относятся к тексту запроса, а результат - к исправленным леммам: он общий для разных опечаток
+    private static SearchResponse withCorrections(SearchResponse response, Map<String, String> corrections) {
+        return corrections.isEmpty() ? response : response.toBuilder().corrections(corrections).build();
+    }
+
+    /**
+     * Исправление опечаток: леммы запроса, которых нет ни на одном сайте поиска, заменяются ближайшими леммами сайтов
+     * по словарям в памяти (LemmaDictionaries)
+     *
+     * @return соответствие леммы запроса и исправленной леммы
+     */
+    private Map<String, String> correctLemmas(List<Site> sites, Set<String> lemmasNames) {
+        var corrections = new TreeMap<String, String>();
+        for (var lemma : lemmasNames) {
+            var known = sites.stream().anyMatch(site -> lemmaDictionaries.getCorrections(site).contains(lemma));
+            if (known) {
+                continue;
+            }
 
-        if (lemmas.isEmpty()) {
-            return SearchResponse.builder().result(true).count(0).data(Collections.emptyList()).build();
+            FuzzyIndex.Correction best = null;
+            for (var site : sites) {
+                var correction = lemmaDictionaries.getCorrections(site).correct(lemma);
+                if (correction != null && (best == null || correction.isBetterThan(best))) {
+                    best = correction;
+                }
+            }
+            if (best != null) {
+                corrections.put(lemma, best.lemma());
+            }
+        }
+
+        if (!corrections.isEmpty()) {
+            log.debug("Исправлены опечатки в леммах запроса: {}", corrections);
+        }
+        return corrections;
+    }
+
+    private SearchResponse search(SearchTask task) {
+        // Поколения индексов читаются до поиска: изменение сайта во время поиска сделает результат неактуальным
+        task = task.withGenerations(searchCache.getGenerations(task.cacheKey()));
+        var sites = task.sites();
+        var query = task.query();
+        var window = task.window();
+
+        var relevanceMode = getRelevanceMode(sites);
+        var deadline = window.deadline();
+
+        QueryPlan plan = null;
+        if (!deadline.isExpired()) {
+            plan = planQuery(sites, task.lemmasNames(), relevanceMode);
+        }
+
+        if (deadline.isExpired()) {
+            return createExpiredResponse();
+        }
+        if (plan.isEmpty(relevanceMode)) {
+            return createEmptyResponse(plan);
         }
 
         var siteUrls = sites.stream().map(Site::getUrl).distinct().toList();
         log.info("Начат поиск \"{}\" в списке сайтов: {}", query, siteUrls);
+        if (!plan.prunedLemmas().isEmpty()) {
+            log.info("Из поиска \"{}\" исключены слишком частые леммы: {}", query, plan.prunedLemmas());
+        }
         var start = System.currentTimeMillis();
 
-        var absoluteRelevance = computeAbsoluteRelevance(lemmas);
-        var relativeRelevance = computeRelativeRelevance(absoluteRelevance);
+        var lemmas = plan.siteLemmas();
+        var foundPages = switch (relevanceMode) {
+            case ITERATIVE -> findPagesIteratively(lemmas, window);
+            case AGGREGATE -> findPagesAggregated(lemmas, plan.lemmas().size(), window);
+            case POSTINGS -> findPagesFromPostings(lemmas, postingsStore::read, window);
+            case SEGMENTS -> findPagesFromPostings(lemmas, segmentStore::read, window);
+            case MEMORY -> findPagesInMemory(sites, plan.lemmas(), window);
+        };
+        // Время расчёта релевантности отдельно от формирования сниппетов - для сравнения режимов
+        var relevanceTime = System.currentTimeMillis() - start;
 
-        var lemmasFinder = applicationContext.getBean(LemmasFinder.class);
-        var lemmasNames = lemmasFinder.findLemmas(query).keySet();
-        var data = getSearchData(relativeRelevance, limit, offset, lemmasNames);
+        var pages = findPages(foundPages.relevance().stream().map(Map.Entry::getKey).toList());
+        var response = createResponse(task, plan, foundPages, pages, contentStore::load);
+
+        log.info("Поиск \"{}\" выполнен за {} мс (релевантность в режиме {} - {} мс). Найдено результатов: {}. "
+                        + "Список сайтов: {}.",
+                query, System.currentTimeMillis() - start, relevanceMode, relevanceTime, foundPages.count(), siteUrls);
 
-        var foundCount = relativeRelevance.size();
+        return response;
+    }
 
-        log.info("Поиск \"{}\" выполнен за {} мс. Найдено результатов: {}. Список сайтов: {}.",
-                query, System.currentTimeMillis() - start, foundCount, siteUrls);
+    // Время истекло до расчёта релевантности: найденных страниц ещё нет
+    private SearchResponse createExpiredResponse() {
+        countDeadlineExceeded("lemmas");
+        return SearchResponse.builder().result(true).count(0).data(Collections.emptyList()).partial(true).build();
+    }
 
-        return SearchResponse.builder().result(true).count(foundCount).data(data).build();
+    private static SearchResponse createEmptyResponse(QueryPlan plan) {
+        return SearchResponse.builder().result(true).count(0).data(Collections.emptyList())
+                .prunedLemmas(plan.prunedLemmas().isEmpty() ? null : plan.prunedLemmas()).build();
     }
 
-    private Map<Site, List<Lemma>> findLemmas(List<Site> sites, String query) {
-        if (sites.isEmpty() || query.isBlank()) {
-            return Collections.emptyMap();
+    /**
+     * Формирование ответа по рассчитанной релевантности: сниппеты, курсор следующей страницы, запись в кеш
+     *
+     * @param pages         загруженные страницы диапазона вывода. Страница могла быть удалена после расчёта
+     *                      релевантности, такие страницы пропускаются.
+     * @param contentLoader загрузка содержимого страниц для сниппетов
+     */
+    private SearchResponse createResponse(SearchTask task, QueryPlan plan, FoundPages foundPages,
+                                          Map<Integer, Page> pages,
+                                          Function<List<Page>, Map<Integer, String>> contentLoader) {
+        var window = task.window();
+        if (foundPages.partial() && window.deadline().isExpired()) {
+            countDeadlineExceeded("relevance");
+        }
+
+        var relevance = foundPages.relevance().stream()
+                .filter(entry -> pages.containsKey(entry.getKey()))
+                .map(entry -> Map.entry(pages.get(entry.getKey()), entry.getValue()))
+                .toList();
+        var searchData = getSearchData(relevance, task.lemmasNames(), window.deadline(), contentLoader);
+        var data = searchData.data();
+        var foundCount = foundPages.count();
+        var prunedLemmas = plan.prunedLemmas().isEmpty() ? null : plan.prunedLemmas();
+
+        var pageIds = relevance.stream().map(entry -> entry.getKey().getId()).toList();
+        var nextCursor = foundPages.next() == null ? null : foundPages.next().encode();
+        if (foundPages.partial() || searchData.partial()) {
+            // Частичный результат не кешируется: следующий запрос может успеть обработать все сайты и сниппеты.
+            // Курсор возвращается, только если релевантность рассчитана полностью.
+            return SearchResponse.builder().result(true).count(foundCount).data(data).cursor(nextCursor).partial(true)
+                    .prunedLemmas(prunedLemmas).maxRelevance(foundPages.maxRelevance()).build();
+        }
+        searchCache.put(task.cacheKey(), window.generations(), new SearchCache.Result(pageIds, data, foundCount,
+                nextCursor, prunedLemmas, foundPages.maxRelevance()));
+
+        return SearchResponse.builder().result(true).count(foundCount).data(data).cursor(nextCursor)
+                .prunedLemmas(prunedLemmas).maxRelevance(foundPages.maxRelevance()).build();
+    }
+
+    // Пока индекс в памяти загружается или сжатые списки и сегменты строятся, поиск выполняется одним группирующим
+    // запросом к базе данных
+    private RelevanceMode getRelevanceMode(List<Site> sites) {
+        var relevanceMode = searchSettings.getRelevanceMode();
+        if (relevanceMode == RelevanceMode.MEMORY && sites.stream().anyMatch(site -> searchIndex.get(site) == null)) {
+            return RelevanceMode.AGGREGATE;
+        }
+        if (relevanceMode == RelevanceMode.SEGMENTS && !segmentStore.isReady()) {
+            return RelevanceMode.AGGREGATE;
+        }
+        if (relevanceMode == RelevanceMode.POSTINGS && !postingsStore.isReady()) {
+            return RelevanceMode.AGGREGATE;
+        }
+
+        return relevanceMode;
+    }
+
+    /**
+     * Выбор лемм для поиска. Леммы, которые встречаются больше чем на search-settings.max-lemma-frequency доле страниц
+     * сайтов поиска, почти не влияют на отбор, но требуют чтения почти всех индексов сайтов. Такие леммы исключаются,
+     * остаются в запросе только для выделения в сниппетах.
+     *
+     * @param sites         сайты поиска
+     * @param lemmasNames   все леммы запроса
+     * @param relevanceMode способ расчёта релевантности. Для индекса в памяти частоты берутся из него, а не из базы
+     *                      данных.
+     */
+    private QueryPlan planQuery(List<Site> sites, Set<String> lemmasNames, RelevanceMode relevanceMode) {
+        if (sites.isEmpty() || lemmasNames.isEmpty()) {
+            return new QueryPlan(lemmasNames, Collections.emptyList(), Collections.emptyMap());
+        }
+
+        if (relevanceMode == RelevanceMode.MEMORY) {
+            var frequencies = new HashMap<String, Long>();
+            var pagesCount = 0L;
+            for (var site : sites) {
+                var siteIndex = searchIndex.get(site);
+                if (siteIndex == null) {
+                    continue;
+                }
+                pagesCount += siteIndex.pagesCount();
+                for (var lemma : lemmasNames) {
+                    frequencies.merge(lemma, (long) siteIndex.frequency(lemma), Long::sum);
+                }
+            }
+            return planQuery(lemmasNames, Collections.emptyList(), frequencies, pagesCount);
         }
 
-        var lemmasFinder = applicationContext.getBean(LemmasFinder.class);
-        var lemmasNames = lemmasFinder.findLemmas(query).keySet();
         var lemmas = lemmaRepository.findBySiteInAndLemmaIn(sites, lemmasNames);
+        var pagesCount = isPruningPossible(lemmasNames) ? pageRepository.countBySiteIn(sites) : 0;
+        return planQuery(lemmasNames, lemmas, getFrequencies(lemmas), pagesCount);
+    }
 
-        return lemmas.stream()
+    private boolean isPruningPossible(Set<String> lemmasNames) {
+        return lemmasNames.size() > 1 && searchSettings.getMaxLemmaFrequency() < 1;
+    }
+
+    private static Map<String, Long> getFrequencies(List<Lemma> lemmas) {
+        var frequencies = new HashMap<String, Long>();
+        lemmas.forEach(lemma -> frequencies.merge(lemma.getLemma(), (long) lemma.getFrequency(), Long::sum));
+        return frequencies;
+    }
+
+    /**
+     * @param lemmasNames все леммы запроса
+     * @param lemmas      леммы запроса из базы данных на сайтах поиска
+     * @param frequencies суммарные частоты лемм на сайтах поиска
+     * @param pagesCount  количество страниц сайтов поиска
+     */
+    private QueryPlan planQuery(Set<String> lemmasNames, List<Lemma> lemmas, Map<String, Long> frequencies,
+                                long pagesCount) {
+        var prunedLemmas = findFrequentLemmas(lemmasNames, frequencies, pagesCount);
+        var searchedLemmas = new HashSet<>(lemmasNames);
+        prunedLemmas.forEach(searchedLemmas::remove);
+
+        var siteLemmas = lemmas.stream()
+                .filter(lemma -> searchedLemmas.contains(lemma.getLemma()))
                 .collect(Collectors.groupingBy(Lemma::getSite))
                 .entrySet().stream()
                 // Если хотя бы одной леммы нет в базе данных, значит заведомо не найдётся подходящая страница
-                .filter(entry -> entry.getValue().size() == lemmasNames.size())
+                .filter(entry -> entry.getValue().size() == searchedLemmas.size())
                 .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+
+        return new QueryPlan(searchedLemmas, prunedLemmas, siteLemmas);
     }
 
-    // Собирает информацию обо всех сайтах. Корректность группировки данных по сайтам не проверяется.
-    private Map<Page, Float> computeAbsoluteRelevance(Map<Site, List<Lemma>> lemmas) {
+    // Слишком частые леммы по суммарной частоте на всех сайтах поиска. Если частые все леммы, для поиска остаётся
+    // самая редкая из них.
+    private List<String> findFrequentLemmas(Set<String> lemmasNames, Map<String, Long> frequencies, long pagesCount) {
+        if (lemmasNames.size() < 2 || pagesCount == 0) {
+            return Collections.emptyList();
+        }
 
-        if (lemmas.isEmpty()) {
-            return Collections.emptyMap();
+        var maxFrequency = searchSettings.getMaxLemmaFrequency() * pagesCount;
+        var frequentLemmas = lemmasNames.stream()
+                .filter(lemma -> frequencies.getOrDefault(lemma, 0L) > maxFrequency)
+                .sorted()
+                .toList();
+        if (frequentLemmas.size() < lemmasNames.size()) {
+            return frequentLemmas;
         }
 
-        Map<Page, Float> relevance = new HashMap<>();
+        var rarest = lemmasNames.stream()
+                .min(Comparator.comparingLong((String lemma) -> frequencies.getOrDefault(lemma, 0L))
+                        .thenComparing(Comparator.naturalOrder()))
+                .orElseThrow();
+        return frequentLemmas.stream().filter(lemma -> !lemma.equals(rarest)).toList();
+    }
 
-        for (var siteLemmas : lemmas.values()) {
-            if (siteLemmas.isEmpty()) {
-                continue;
+    // Расчёт релевантности отдельными запросами по каждой лемме. Запросы читают только пары "страница - ранг" в
+    // порядке идентификаторов страниц, пересечение выполняется в приложении без загрузки сущностей страниц.
+    private FoundPages findPagesIteratively(Map<Site, List<Lemma>> lemmas, Window window) {
+        var siteTasks = new LinkedHashMap<Site, Consumer<TopRelevance>>();
+        lemmas.forEach((site, siteLemmas) ->
+                siteTasks.put(site, result -> computeAbsoluteRelevance(siteLemmas, result, window.deadline())));
+
+        return scoreSites(siteTasks, window);
+    }
+
+    // Расчёт релевантности одним группирующим запросом по всем сайтам. В базу данных передаются только идентификаторы
+    // лемм, обратно возвращаются только нужные страницы. Выполняющийся запрос не прерывается, срок проверяется перед
+    // каждым запросом.
+    private FoundPages findPagesAggregated(Map<Site, List<Lemma>> lemmas, int lemmasCount, Window window) {
+        if (window.deadline().isExpired()) {
+            return new FoundPages(Collections.emptyList(), 0, null, true, 0);
+        }
+
+        var lemmaIds = getLemmaIds(lemmas.values());
+
+        var after = window.after();
+        List<PageRelevance> rows;
+        int count;
+        double maxRelevance;
+
+        if (after == null) {
+            // Выборка всегда с первой страницы: первая строка содержит максимальную релевантность для нормирования
+            var topRows = indexRepository.findRelevance(lemmaIds, lemmasCount, window.topCount());
+            if (topRows.isEmpty()) {
+                return new FoundPages(Collections.emptyList(), 0, null, false, 0);
+            }
+
+            count = (int) topRows.get(0).getTotal();
+            maxRelevance = topRows.get(0).getRelevance();
+            rows = topRows.subList(Math.min(window.offset(), topRows.size()), topRows.size());
+        } else {
+            count = after.count();
+            maxRelevance = after.maxRelevance();
+
+            if (!Arrays.equals(after.generations(), window.generations())) {
+                // Индекс изменился после первой страницы: количество и максимальная релевантность пересчитываются
+                var firstRow = indexRepository.findRelevance(lemmaIds, lemmasCount, 1);
+                if (firstRow.isEmpty()) {
+                    return new FoundPages(Collections.emptyList(), 0, null, false, 0);
+                }
+                count = (int) firstRow.get(0).getTotal();
+                maxRelevance = firstRow.get(0).getRelevance();
+
+                if (window.deadline().isExpired()) {
+                    return new FoundPages(Collections.emptyList(), count, null, true, maxRelevance);
+                }
             }
-            var tmpRelevance = computeAbsoluteRelevance(siteLemmas);
 
-            relevance.putAll(tmpRelevance);
+            rows = indexRepository.findRelevanceAfter(lemmaIds, lemmasCount, after.lastRelevance(),
+                    after.lastPageId(), window.limit());
         }
 
-        return relevance;
+        if (rows.isEmpty()) {
+            return new FoundPages(Collections.emptyList(), count, null, false, maxRelevance);
+        }
+
+        val max = maxRelevance;
+        var relevance = rows.stream()
+                .map(row -> Map.entry(row.getPageId(), (float) (row.getRelevance() / max)))
+                .toList();
+        var lastRow = rows.get(rows.size() - 1);
+        var next = window.next(count, maxRelevance, lastRow.getRelevance(), lastRow.getPageId(), rows.size());
+
+        return new FoundPages(relevance, count, next, false, maxRelevance);
     }
 
-    // Собирает информацию об одном сайте
-    private Map<Page, Float> computeAbsoluteRelevance(List<Lemma> lemmas) {
-        if (lemmas.isEmpty()) {
-            return Collections.emptyMap();
+    /**
+     * Расчёт релевантности по сжатым спискам вхождений: по одному чтению на лемму, пересечение в приложении
+     *
+     * @param postingsReader чтение списков вхождений по идентификаторам лемм: таблица postings или сегменты индекса
+     */
+    private FoundPages findPagesFromPostings(Map<Site, List<Lemma>> lemmas,
+                                             Function<Collection<Integer>, Map<Integer, PostingList>> postingsReader,
+                                             Window window) {
+        if (window.deadline().isExpired()) {
+            return new FoundPages(Collections.emptyList(), 0, null, true, 0);
+        }
+
+        return findPagesFromPostings(lemmas, postingsReader.apply(getLemmaIds(lemmas.values())), window);
+    }
+
+    // Пересечение прочитанных ранее списков вхождений
+    private FoundPages findPagesFromPostings(Map<Site, List<Lemma>> lemmas, Map<Integer, PostingList> postings,
+                                             Window window) {
+        var siteTasks = new LinkedHashMap<Site, Consumer<TopRelevance>>();
+        lemmas.forEach((site, siteLemmas) -> {
+            var sitePostings = siteLemmas.stream()
+                    .map(lemma -> postings.get(lemma.getId()))
+                    .toList();
+            siteTasks.put(site, result -> PostingsIntersection.intersect(sitePostings, result, window.deadline()));
+        });
+
+        return scoreSites(siteTasks, window);
+    }
+
+    private static List<Integer> getLemmaIds(Collection<List<Lemma>> lemmas) {
+        return lemmas.stream()
+                .flatMap(List::stream)
+                .map(Lemma::getId)
+                .distinct()
+                .toList();
+    }
+
+    // Списки вхождений лемм из таблицы indexes одним запросом. Для лемм без вхождений - пустой список.
+    private Map<Integer, PostingList> readPostings(Collection<Integer> lemmaIds) {
+        var postings = new HashMap<Integer, PostingList>();
+        if (lemmaIds.isEmpty()) {
+            return postings;
+        }
+
+        var builder = new PostingListBuilder();
+        var currentLemmaId = -1;
+        for (var row : indexRepository.findPostings(lemmaIds)) {
+            if (row.getLemmaId() != currentLemmaId && builder.size() > 0) {
+                postings.put(currentLemmaId, builder.build());
+            }
+            currentLemmaId = row.getLemmaId();
+            builder.add(row.getPageId(), row.getRank());
+        }
+        if (builder.size() > 0) {
+            postings.put(currentLemmaId, builder.build());
         }
+        lemmaIds.forEach(lemmaId -> postings.putIfAbsent(lemmaId, PostingList.empty()));
 
-        lemmas.sort(Comparator.comparingInt(Lemma::getFrequency));
+        return postings;
+    }
 
-        var relevance = indexRepository.findByLemma(lemmas.get(0))
-                .stream()
-                .collect(Collectors.toMap(Index::getPage, Index::getRank));
+    // Расчёт релевантности по индексу в памяти. База данных используется только для загрузки найденных страниц.
+    private FoundPages findPagesInMemory(List<Site> sites, Set<String> lemmasNames, Window window) {
+        var siteTasks = new LinkedHashMap<Site, Consumer<TopRelevance>>();
+        for (var site : sites) {
+            var siteIndex = searchIndex.get(site);
+            if (siteIndex != null) {
+                siteTasks.put(site, result -> siteIndex.computeRelevance(lemmasNames, result, window.deadline()));
+            }
+        }
 
-        for (int i = 1; i < lemmas.size(); i++) {
-            var tmpRelevance = indexRepository.findByLemmaAndPageIn(lemmas.get(i), relevance.keySet())
-                    .stream()
-                    .collect(Collectors.toMap(Index::getPage, Index::getRank));
+        return scoreSites(siteTasks, window);
+    }
+
+    /**
+     * Расчёт релевантности по сайтам. Сайты обрабатываются параллельно, у каждого свой отбор лучших страниц, затем
+     * результаты сливаются. Сайт, расчёт по которому не уложился в search-settings.site-timeout или в оставшееся время
+     * запроса, в ответ не попадает, а ответ помечается как частичный. Так же исключается сайт, расчёт по которому не
+     * принят переполненным пулом потоков поиска: в потоке запроса он не ограничивался бы site-timeout. Незавершённые
+     * расчёты прерываются и прекращаются при следующей проверке срока.
+     *
+     * @param siteTasks расчёт релевантности по каждому сайту
+     * @param window    диапазон вывода
+     */
+    private FoundPages scoreSites(Map<Site, Consumer<TopRelevance>> siteTasks, Window window) {
+        if (siteTasks.size() <= 1) {
+            var relevance = window.createTopRelevance();
+            siteTasks.values().forEach(task -> task.accept(relevance));
+            return selectPages(relevance, window, false);
+        }
 
-            if (tmpRelevance.isEmpty()) {
-                return tmpRelevance;
+        var futures = new LinkedHashMap<Site, Future<TopRelevance>>();
+        var partial = false;
+        for (var entry : siteTasks.entrySet()) {
+            var task = entry.getValue();
+            try {
+                futures.put(entry.getKey(), searchExecutor.submit(() -> {
+                    var relevance = window.createTopRelevance();
+                    task.accept(relevance);
+                    return relevance;
+                }));
+            } catch (TaskRejectedException e) {
+                log.warn("Очередь расчёта релевантности заполнена, сайт {} исключён из ответа", entry.getKey().getUrl());
+                countDeadlineExceeded("site-queue");
+                partial = true;
             }
+        }
 
-            for (var entry : tmpRelevance.entrySet()) {
-                var newValue = entry.getValue() + relevance.get(entry.getKey());
-                entry.setValue(newValue);
+        var waitNanos = Math.min(searchSettings.getSiteTimeout().toNanos(), window.deadline().remainingNanos());
+        var deadline = System.nanoTime() + waitNanos;
+        var parts = new ArrayList<TopRelevance>(futures.size());
+
+        try {
+            for (var entry : futures.entrySet()) {
+                try {
+                    parts.add(entry.getValue().get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS));
+                } catch (TimeoutException e) {
+                    log.warn("Расчёт релевантности по сайту {} не завершён за {} мс, сайт исключён из ответа",
+                            entry.getKey().getUrl(), TimeUnit.NANOSECONDS.toMillis(waitNanos));
+                    partial = true;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Поиск прерван");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
             }
-            relevance = tmpRelevance;
+            throw new CompletionException(e.getCause());
+        } finally {
+            // Незавершённые расчёты больше не нужны
+            futures.values().forEach(future -> future.cancel(true));
         }
 
-        return relevance;
+        return selectPages(TopRelevance.merge(window.topCount(), parts), window, partial);
+    }
+
+    // Сколько самых релевантных страниц нужно отобрать для вывода диапазона
+    private static int getTopCount(int limit, int offset) {
+        return (int) Math.min((long) offset + limit, Integer.MAX_VALUE);
     }
 
-    private Map<Page, Float> computeRelativeRelevance(@NonNull Map<Page, Float> absoluteRelevance) {
-        if (absoluteRelevance.isEmpty()) {
-            return Collections.emptyMap();
+    // Выбор диапазона вывода по отобранным в приложении самым релевантным страницам. Нормируются и превращаются в
+    // объекты только страницы диапазона.
+    private FoundPages selectPages(TopRelevance relevance, Window window, boolean partial) {
+        partial |= relevance.isPartial(); // Расчёт прерван по истечении времени запроса
+        var count = relevance.count();
+        var selected = relevance.finish();
+        log.debug("Релевантность рассчитана для {} из {} найденных страниц", relevance.scored(), count);
+
+        var from = window.skip();
+        if (from >= selected) {
+            return new FoundPages(Collections.emptyList(), count, null, partial, relevance.maxRelevance());
         }
 
-        var maxRelevance = absoluteRelevance.values().stream()
-                .max(Float::compareTo)
-                .get();
+        var maxRelevance = relevance.maxRelevance();
+        var to = (int) Math.min((long) from + window.limit(), selected);
+
+        var entries = new ArrayList<Map.Entry<Integer, Float>>(to - from);
+        for (var i = from; i < to; i++) {
+            entries.add(Map.entry(relevance.pageId(i), relevance.relevance(i) / maxRelevance));
+        }
+        // Продолжение частичного ответа пропустило бы результаты исключённых сайтов
+        var next = partial ? null
+                : window.next(count, maxRelevance, relevance.relevance(to - 1), relevance.pageId(to - 1), to - from);
 
-        return absoluteRelevance.entrySet().stream()
-                .collect(Collectors.toMap(
-                        Map.Entry::getKey,
-                        entry -> entry.getValue() / maxRelevance));
+        return new FoundPages(entries, count, next, partial, maxRelevance);
     }
 
-    private List<SearchData> getSearchData(@NonNull Map<Page, Float> relevance, int limit, int offset,
-                                           @NonNull Set<String> lemmas) {
-        if (relevance.isEmpty() || offset > (relevance.size() - 1) || lemmas.isEmpty() || limit <= 0 || offset < 0) {
-            return Collections.emptyList();
+    // Загрузка страниц выбранного диапазона вывода
+    private Map<Integer, Page> findPages(Collection<Integer> pageIds) {
+        var pages = new HashMap<Integer, Page>();
+        if (!pageIds.isEmpty()) {
+            pageRepository.findAllById(pageIds).forEach(page -> pages.put(page.getId(), page));
         }
 
-        var sortedRelevance = relevance.entrySet().stream()
-                .sorted(Collections.reverseOrder(Map.Entry.comparingByValue()))
+        return pages;
+    }
+
+    // Собирает информацию об одном сайте. Списки читаются от самой редкой леммы: если она не встречается, остальные
+    // леммы не запрашиваются. По истечении времени следующие леммы тоже не запрашиваются.
+    private void computeAbsoluteRelevance(List<Lemma> lemmas, TopRelevance result, Deadline deadline) {
+        var sortedLemmas = lemmas.stream()
+                .sorted(Comparator.comparingInt(Lemma::getFrequency))
                 .toList();
+        var postings = new ArrayList<PostingList>(sortedLemmas.size());
+        var builder = new PostingListBuilder();
+
+        for (var lemma : sortedLemmas) {
+            // Прерывание потока - расчёт по сайту отменён по истечении site-timeout
+            if (deadline.isExpired() || Thread.currentThread().isInterrupted()) {
+                result.markPartial();
+                return;
+            }
+
+            for (var row : indexRepository.findPostings(List.of(lemma.getId()))) {
+                builder.add(row.getPageId(), row.getRank());
+            }
+
+            var postingList = builder.build();
+            if (postingList.isEmpty()) {
+                return;
+            }
+            postings.add(postingList);
+        }
 
-        List<SearchData> data = new ArrayList<>(limit);
+        PostingsIntersection.intersect(postings, result, deadline);
+    }
+
+    // Сниппеты формируются, пока не истекло время запроса. Остальные страницы выводятся без заголовка и сниппета.
+    private SearchDataList getSearchData(@NonNull List<Map.Entry<Page, Float>> relevance,
+                                         @NonNull Set<String> lemmas, @NonNull Deadline deadline,
+                                         @NonNull Function<List<Page>, Map<Integer, String>> contentLoader) {
+        if (relevance.isEmpty() || lemmas.isEmpty()) {
+            return new SearchDataList(Collections.emptyList(), false);
+        }
+
+        List<SearchData> data = new ArrayList<>(relevance.size());
         var lemmasFinder = applicationContext.getBean(LemmasFinder.class);
+        // Содержимое загружается только для выводимых страниц
+        var expired = deadline.isExpired();
+        var contents = expired ? Collections.<Integer, String>emptyMap()
+                : contentLoader.apply(relevance.stream().map(Map.Entry::getKey).toList());
 
-        var maxIndex = Math.min(offset + limit, relevance.size());
-        for (int i = offset; i < maxIndex; i++) {
-            var entry = sortedRelevance.get(i);
+        for (var entry : relevance) {
             var page = entry.getKey();
             var site = page.getSite();
+            var content = contents.getOrDefault(page.getId(), "");
+            expired = expired || deadline.isExpired();
 
             var title = "";
             var snippet = "";
-            if (page.canBeParsed()) {
-                var document = Jsoup.parse(page.getContent());
+            if (!expired && !content.isBlank()) {
+                var document = Jsoup.parse(content);
                 title = document.title();
                 // Текст с переносами строк для более точного определения границ пояснений
                 snippet = lemmasFinder.getSnippet(document.wholeText(), lemmas);
@@ -233,7 +1124,138 @@ public class SearchServiceImpl implements SearchService {
             data.add(searchData);
         }
 
-        return data;
+        if (expired) {
+            countDeadlineExceeded("snippets");
+        }
+
+        return new SearchDataList(data, expired);
+    }
+
+    // Запрос, не уложившийся во время, с этапом, на котором истекло время: lemmas, relevance или snippets
+    private void countDeadlineExceeded(String stage) {
+        Counter.builder("search.deadline.exceeded")
+                .description("Поисковые запросы, не уложившиеся в отведённое время")
+                .tag("stage", stage)
+                .register(meterRegistry)
+                .increment();
+    }
+
+    /**
+     * Страницы выбранного диапазона вывода с относительной релевантностью (по убыванию) и общее количество найденных
+     * страниц
+     *
+     * @param relevance    идентификаторы страниц диапазона вывода и их относительная релевантность
+     * @param count        общее количество найденных страниц
+     * @param next         курсор следующей страницы или null, если выведены все результаты
+     * @param partial      не все сайты обработаны за отведённое время
+     * @param maxRelevance абсолютная релевантность, по которой нормирована релевантность, или 0
+     */
+    private record FoundPages(List<Map.Entry<Integer, Float>> relevance, int count, SearchCursor next,
+                              boolean partial, double maxRelevance) {
+    }
+
+    /**
+     * Леммы, по которым выполняется поиск
+     *
+     * @param lemmas       леммы поиска
+     * @param prunedLemmas исключённые частые леммы
+     * @param siteLemmas   леммы поиска из базы данных по сайтам, на которых встречаются все леммы поиска. Для индекса
+     *                     в памяти не заполняется.
+     */
+    private record QueryPlan(Set<String> lemmas, List<String> prunedLemmas, Map<Site, List<Lemma>> siteLemmas) {
+
+        // Поиск заведомо ничего не найдёт: нет лемм или ни на одном сайте нет всех лемм
+        boolean isEmpty(RelevanceMode relevanceMode) {
+            return lemmas.isEmpty() || relevanceMode != RelevanceMode.MEMORY && siteLemmas.isEmpty();
+        }
+    }
+
+    /**
+     * @param sites  сайты поиска или null
+     * @param error  причина, по которой поиск по сайтам невозможен, или null
+     */
+    private record SitesSelection(List<Site> sites, String error) {
+
+        static SitesSelection error(String error) {
+            return new SitesSelection(null, error);
+        }
+    }
+
+    /**
+     * Подготовленный к выполнению поисковый запрос
+     *
+     * @param query       текст запроса
+     * @param lemmasNames леммы запроса после исправления опечаток
+     * @param cacheKey    ключ кеша результатов, он же ключ объединения одинаковых запросов
+     */
+    private record SearchTask(List<Site> sites, String query, Set<String> lemmasNames, SearchCache.Key cacheKey,
+                              Window window) {
+
+        SearchTask withGenerations(long[] generations) {
+            return new SearchTask(sites, query, lemmasNames, cacheKey, window.withGenerations(generations));
+        }
+    }
+
+    /**
+     * @param task        запрос или null, если параметры запроса некорректны
+     * @param corrections исправленные опечатки
+     * @param error       ошибка в параметрах запроса или null
+     */
+    private record PreparedQuery(SearchTask task, Map<String, String> corrections, String error) {
+
+        static PreparedQuery error(String error) {
+            return new PreparedQuery(null, Collections.emptyMap(), error);
+        }
+    }
+
+    /**
+     * @param data    результаты для вывода
+     * @param partial сниппеты сформированы не для всех страниц
+     */
+    private record SearchDataList(List<SearchData> data, boolean partial) {
+    }
+
+    /**
+     * Диапазон вывода: сдвиг от начала или продолжение после курсора предыдущей страницы
+     *
+     * @param after       курсор предыдущей страницы или null
+     * @param queryHash   хеш лемм запроса и сайтов поиска
+     * @param generations номера поколений индексов сайтов на момент поиска
+     * @param deadline    срок выполнения запроса
+     */
+    private record Window(int limit, int offset, SearchCursor after, int queryHash, long[] generations,
+                          Deadline deadline) {
+
+        Window withGenerations(long[] generations) {
+            return new Window(limit, offset, after, queryHash, generations, deadline);
+        }
+
+        // Сколько самых релевантных страниц нужно отобрать
+        int topCount() {
+            return after == null ? getTopCount(limit, offset) : limit;
+        }
+
+        // Сколько отобранных страниц пропустить
+        int skip() {
+            return after == null ? offset : 0;
+        }
+
+        // После курсора отбираются только страницы хуже последней выведенной
+        TopRelevance createTopRelevance() {
+            return after == null
+                    ? new TopRelevance(topCount())
+                    : new TopRelevance(limit, (float) after.lastRelevance(), after.lastPageId());
+        }
+
+        SearchCursor next(int count, double maxRelevance, double lastRelevance, int lastPageId, int selected) {
+            var position = (long) (after == null ? offset : after.position()) + selected;
+            if (selected == 0 || position >= count) {
+                return null;
+            }
+
+            return new SearchCursor(queryHash, lastRelevance, lastPageId, maxRelevance, count, (int) position,
+                    generations);
+        }
     }
 
 }
@@ -0,0 +1,566 @@
+package searchengine.services;
+
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import searchengine.config.IndexStorageSettings;
+import searchengine.config.Workload;
+import searchengine.index.PostingList;
+import searchengine.index.PostingListBuilder;
+import searchengine.index.Segment;
+import searchengine.index.SegmentMerger;
+import searchengine.index.SegmentWriter;
+import searchengine.model.*;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Сегменты индекса на диске (index-storage-settings.segments). Изменения индексов страниц накапливаются в памяти и
+ * периодически записываются новым неизменяемым сегментом, сегменты близкого размера сливаются в фоне. Списки вхождений
+ * читаются из отображённых в память файлов, без запросов к базе данных: в куче находятся только прочитанные списки.
+ * <p>
+ * Источником данных для анализа страниц остаётся таблица indexes. Сегменты строятся из неё при первом запуске (пока
+ * построение не завершено, поиск выполняется другим способом), далее поддерживаются в актуальном состоянии.
+ * Накопленные изменения записываются и при остановке приложения. Вместе с сегментами хранится общее количество
+ * вхождений в них: если изменения всё же потеряны (аварийное завершение), оно не совпадёт с количеством строк indexes,
+ * и при запуске сегменты строятся заново.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SegmentStore {
+
+    private static final int BUILD_CHUNK_SIZE = 500; // Количество лемм, индексы которых читаются одним запросом
+    private static final String BUILT_MARKER = "built"; // Файл-признак завершённого построения
+    private static final String COUNT_FILE = "postings-count"; // Количество вхождений во всех сегментах
+    private static final long BUILD_RETRY_DELAY = 60_000; // Пауза перед повтором неудавшегося построения, мс
+    private static final int[] NO_PAGES = new int[0];
+
+    private final IndexStorageSettings settings;
+    private final SiteRepository siteRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+
+    private final Object lock = new Object(); // Для накапливаемых изменений и списка сегментов
+    private final Object writeLock = new Object(); // Для записи и слияния сегментов
+    // Лемма -> изменения по страницам: ранг или null для удаления
+    private Map<Integer, SortedMap<Integer, Float>> pending = new HashMap<>();
+    private Set<Integer> pendingCleared = new HashSet<>(); // Удалённые леммы
+    private Map<Integer, SortedMap<Integer, Float>> flushing = Collections.emptyMap(); // Записываемые в данный момент
+    private List<Segment> segments = Collections.emptyList(); // По возрастанию номеров. Список не изменяется.
+    private long sequence; // Номер последнего сегмента. Изменяется при writeLock.
+    private long postingsCount; // Количество вхождений во всех сегментах. Изменяется при writeLock.
+    private volatile boolean ready;
+
+    public boolean isEnabled() {
+        return settings.isSegments();
+    }
+
+    // Сегменты построены и могут использоваться для поиска
+    public boolean isReady() {
+        return isEnabled() && ready;
+    }
+
+    /**
+     * Регистрирует изменения индексов одной страницы
+     *
+     * @param deletedIndexes удалённые индексы
+     * @param savedIndexes   добавленные или изменённые индексы. Леммы должны быть уже записаны в базу данных.
+     */
+    public void append(Collection<Index> deletedIndexes, Collection<Index> savedIndexes) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (lock) {
+            for (var index : deletedIndexes) {
+                getPendingChanges(index).put(index.getPage().getId(), null);
+            }
+            for (var index : savedIndexes) {
+                getPendingChanges(index).put(index.getPage().getId(), index.getRank());
+            }
+        }
+    }
+
+    private SortedMap<Integer, Float> getPendingChanges(Index index) {
+        return pending.computeIfAbsent(index.getLemma().getId(), id -> new TreeMap<>());
+    }
+
+    /**
+     * Регистрирует удаление лемм вместе со всеми их вхождениями. Данные лемм отбрасываются при слиянии сегментов.
+     *
+     * @param lemmaIds идентификаторы удалённых лемм
+     */
+    public void clear(Collection<Integer> lemmaIds) {
+        if (!isEnabled()) {
+            return;
+        }
+
+        synchronized (lock) {
+            pendingCleared.addAll(lemmaIds);
+            lemmaIds.forEach(pending::remove);
+        }
+    }
+
+    /**
+     * Читает списки вхождений лемм из сегментов с учётом ещё не записанных изменений
+     *
+     * @param lemmaIds идентификаторы лемм
+     * @return соответствие идентификатора леммы и списка вхождений. Для лемм без вхождений - пустой список.
+     */
+    public Map<Integer, PostingList> read(Collection<Integer> lemmaIds) {
+        List<Segment> currentSegments;
+        var changes = new HashMap<Integer, List<SortedMap<Integer, Float>>>();
+        synchronized (lock) {
+            // Список сегментов и записываемые изменения заменяются вместе, поэтому изменения не теряются и не
+            // применяются дважды
+            currentSegments = segments;
+            for (var lemmaId : lemmaIds) {
+                var lemmaChanges = new ArrayList<SortedMap<Integer, Float>>(2);
+                // Сначала более ранние изменения, затем более поздние. Накапливаемые изменения копируются.
+                Optional.ofNullable(flushing.get(lemmaId)).ifPresent(lemmaChanges::add);
+                Optional.ofNullable(pending.get(lemmaId)).map(TreeMap::new).ifPresent(lemmaChanges::add);
+                changes.put(lemmaId, lemmaChanges);
+            }
+        }
+
+        var result = new HashMap<Integer, PostingList>();
+        for (var lemmaId : lemmaIds) {
+            var postings = PostingList.empty();
+            for (var segment : currentSegments) {
+                var entry = segment.read(lemmaId);
+                if (entry != null) {
+                    postings = entry.applyTo(postings);
+                }
+            }
+            for (var lemmaChanges : changes.get(lemmaId)) {
+                postings = postings.merge(lemmaChanges);
+            }
+            result.put(lemmaId, postings);
+        }
+
+        return result;
+    }
+
+    @Scheduled(fixedDelayString = "${index-storage-settings.merge-interval:60000}")
+    public void flush() {
+        if (!isReady()) {
+            return; // До окончания построения изменения только накапливаются
+        }
+
+        synchronized (writeLock) {
+            Map<Integer, SortedMap<Integer, Float>> batch;
+            Set<Integer> cleared;
+            synchronized (lock) {
+                if (pending.isEmpty() && pendingCleared.isEmpty()) {
+                    return;
+                }
+                batch = pending;
+                cleared = pendingCleared;
+                flushing = batch;
+                pending = new HashMap<>();
+                pendingCleared = new HashSet<>();
+            }
+
+            var start = System.currentTimeMillis();
+            var countChange = getCountChange(batch, cleared);
+            List<Segment> written;
+            try {
+                written = write(batch, cleared);
+            } catch (IOException e) {
+                log.error("Не удалось записать сегмент индекса: {}", e.getLocalizedMessage());
+                restore(batch, cleared);
+                return;
+            }
+
+            synchronized (lock) {
+                var newSegments = new ArrayList<>(segments);
+                newSegments.addAll(written);
+                segments = List.copyOf(newSegments);
+                flushing = Collections.emptyMap();
+            }
+            postingsCount += countChange;
+            saveCount();
+            log.info("Изменения {} списков вхождений записаны в сегмент индекса за {} мс.", batch.size(),
+                    System.currentTimeMillis() - start);
+
+            mergeSegments();
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        flush();
+    }
+
+    // Возврат изменений, которые не удалось записать. Более поздние изменения тех же страниц сохраняются.
+    private void restore(Map<Integer, SortedMap<Integer, Float>> batch, Set<Integer> cleared) {
+        synchronized (lock) {
+            batch.forEach((lemmaId, changes) -> {
+                var newerChanges = pending.get(lemmaId);
+                if (newerChanges != null) {
+                    changes.putAll(newerChanges);
+                }
+                pending.put(lemmaId, changes);
+            });
+            pendingCleared.addAll(cleared);
+            flushing = Collections.emptyMap();
+        }
+    }
+
+    /**
+     * Изменение количества вхождений после записи изменений: списки изменяемых лемм читаются из сегментов. Вызывается
+     * при writeLock, поэтому список сегментов не изменяется.
+     */
+    private long getCountChange(Map<Integer, SortedMap<Integer, Float>> batch, Set<Integer> cleared) {
+        var lemmaIds = new HashSet<>(batch.keySet());
+        lemmaIds.addAll(cleared);
+
+        var change = 0L;
+        for (var lemmaId : lemmaIds) {
+            var postings = PostingList.empty();
+            for (var segment : segments) {
+                var entry = segment.read(lemmaId);
+                if (entry != null) {
+                    postings = entry.applyTo(postings);
+                }
+            }
+
+            var changed = cleared.contains(lemmaId) ? PostingList.empty() : postings;
+            changed = changed.merge(batch.getOrDefault(lemmaId, Collections.emptySortedMap()));
+            change += changed.size() - postings.size();
+        }
+
+        return change;
+    }
+
+    // Запись количества вхождений. При ошибке остаётся прежнее количество, и при запуске сегменты строятся заново.
+    private void saveCount() {
+        var directory = Path.of(settings.getSegmentsPath());
+        var temporary = directory.resolve(COUNT_FILE + Segment.TEMPORARY_SUFFIX);
+        try {
+            Files.writeString(temporary, Long.toString(postingsCount));
+            Files.move(temporary, directory.resolve(COUNT_FILE), StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("Не удалось записать количество вхождений сегментов индекса: {}", e.getLocalizedMessage());
+        }
+    }
+
+    // Записанное количество вхождений или -1, если его нет
+    private static long readCount(Path directory) {
+        try {
+            return Long.parseLong(Files.readString(directory.resolve(COUNT_FILE)).trim());
+        } catch (IOException | NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private List<Segment> write(Map<Integer, SortedMap<Integer, Float>> batch, Set<Integer> cleared)
+            throws IOException {
+        var lemmaIds = new TreeSet<>(batch.keySet());
+        lemmaIds.addAll(cleared);
+
+        try (var output = new SegmentsOutput()) {
+            var builder = new PostingListBuilder();
+            for (var lemmaId : lemmaIds) {
+                var removed = new ArrayList<Integer>();
+                batch.getOrDefault(lemmaId, Collections.emptySortedMap()).forEach((pageId, rank) -> {
+                    if (rank == null) {
+                        removed.add(pageId);
+                    } else {
+                        builder.add(pageId, rank);
+                    }
+                });
+                output.add(lemmaId, cleared.contains(lemmaId), builder.build(),
+                        removed.stream().mapToInt(Integer::intValue).toArray());
+            }
+            return output.finish();
+        }
+    }
+
+    /**
+     * Слияние самых новых сегментов. Серия сливаемых сегментов продлевается в прошлое, пока следующий сегмент не
+     * больше всей серии и размер серии не превышает maxSegmentSize. Серия сливается, если в ней не меньше
+     * segmentsMergeFactor сегментов. Поэтому каждое вхождение переписывается O(log n) раз, а количество сегментов
+     * растёт логарифмически.
+     */
+    private void mergeSegments() {
+        while (true) {
+            List<Segment> currentSegments;
+            synchronized (lock) {
+                currentSegments = segments;
+            }
+
+            var from = currentSegments.size();
+            var runSize = 0L;
+            while (from > 0) {
+                var size = currentSegments.get(from - 1).size();
+                if (from < currentSegments.size() && size > runSize || runSize + size > settings.getMaxSegmentSize()) {
+                    break;
+                }
+                runSize += size;
+                from--;
+            }
+            if (currentSegments.size() - from < settings.getSegmentsMergeFactor()) {
+                return;
+            }
+
+            if (!merge(currentSegments.subList(from, currentSegments.size()), from == 0)) {
+                return;
+            }
+        }
+    }
+
+    private boolean merge(List<Segment> run, boolean oldest) {
+        var start = System.currentTimeMillis();
+        var minSequence = run.get(0).minSequence();
+        var maxSequence = run.get(run.size() - 1).maxSequence();
+
+        Segment merged;
+        try (var writer = new SegmentWriter(getPath(minSequence, maxSequence), minSequence, maxSequence)) {
+            SegmentMerger.merge(run, writer, oldest);
+            merged = writer.finish();
+        } catch (IOException e) {
+            log.error("Не удалось слить сегменты индекса: {}", e.getLocalizedMessage());
+            return false;
+        }
+
+        int segmentsCount;
+        synchronized (lock) {
+            var newSegments = new ArrayList<>(segments);
+            newSegments.removeAll(run);
+            newSegments.add(merged);
+            newSegments.sort(Comparator.comparingLong(Segment::maxSequence));
+            segments = List.copyOf(newSegments);
+            segmentsCount = segments.size();
+        }
+
+        // Поиск, начатый до замены списка, дочитывает отображения удалённых файлов
+        run.forEach(this::delete);
+
+        log.info("Слияние {} сегментов индекса ({} байт) выполнено за {} мс. Размер нового сегмента - {} байт, "
+                        + "лемм - {}. Всего сегментов: {}.", run.size(), run.stream().mapToLong(Segment::size).sum(),
+                System.currentTimeMillis() - start, merged.size(), merged.lemmasCount(), segmentsCount);
+        return true;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void open() {
+        if (!isEnabled()) {
+            return;
+        }
+
+        var directory = Path.of(settings.getSegmentsPath());
+        var found = new ArrayList<Segment>();
+        boolean built;
+        try {
+            Files.createDirectories(directory);
+            built = Files.exists(directory.resolve(BUILT_MARKER));
+            if (built) {
+                var count = readCount(directory);
+                var indexesCount = indexRepository.count();
+                if (count != indexesCount) {
+                    log.warn("Количество вхождений в сегментах ({}) не совпадает с количеством индексов ({})", count,
+                            indexesCount);
+                    Files.delete(directory.resolve(BUILT_MARKER));
+                    built = false;
+                }
+            }
+
+            try (var files = Files.list(directory)) {
+                for (var path : files.toList()) {
+                    var name = path.getFileName().toString();
+                    if (name.endsWith(Segment.TEMPORARY_SUFFIX) || name.endsWith(Segment.SUFFIX) && !built) {
+                        Files.delete(path); // Прерванная запись или незавершённое построение
+                    } else if (name.endsWith(Segment.SUFFIX)) {
+                        found.add(Segment.open(path));
+                    }
+                }
+            }
+        } catch (IOException e) {
+            log.error("Не удалось открыть сегменты индекса в каталоге {}: {}", directory.toAbsolutePath(),
+                    e.getLocalizedMessage());
+            return;
+        }
+
+        // Сегменты, уже слитые в другой сегмент: приложение остановлено до удаления исходных файлов слияния
+        var merged = found.stream()
+                .filter(segment -> found.stream().anyMatch(other -> other != segment && other.covers(segment)))
+                .toList();
+        merged.forEach(this::delete);
+        found.removeAll(merged);
+        found.sort(Comparator.comparingLong(Segment::maxSequence));
+
+        synchronized (writeLock) {
+            synchronized (lock) {
+                segments = List.copyOf(found);
+            }
+            sequence = found.isEmpty() ? 0 : found.get(found.size() - 1).maxSequence();
+        }
+
+        if (built) {
+            postingsCount = readCount(directory);
+            ready = true;
+            log.info("Открыто сегментов индекса: {}, общий размер - {} байт", found.size(),
+                    found.stream().mapToLong(Segment::size).sum());
+            return;
+        }
+
+        // Построение читает всю таблицу indexes, поэтому использует пул соединений индексации
+        var thread = new Thread(Workload.INDEXING.wrap(() -> buildAll(directory)), "segments-build");
+        thread.setDaemon(true); // Ожидание повтора не задерживает остановку приложения
+        thread.start();
+    }
+
+    // Построение с повтором через BUILD_RETRY_DELAY после ошибки
+    private void buildAll(Path directory) {
+        while (!build(directory)) {
+            // Накопленные изменения уже есть в таблице indexes и будут прочитаны повторным построением
+            synchronized (lock) {
+                pending = new HashMap<>();
+                pendingCleared = new HashSet<>();
+            }
+
+            try {
+                Thread.sleep(BUILD_RETRY_DELAY);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // Возвращает false, если построить сегменты не удалось. Записанные сегменты в этом случае удаляются.
+    private boolean build(Path directory) {
+        log.info("Запуск построения сегментов индекса");
+        var start = System.currentTimeMillis();
+
+        var built = new ArrayList<Segment>();
+        synchronized (writeLock) {
+            var count = 0L;
+            try {
+                // Идентификаторы лемм возрастают в пределах сайта, поэтому у каждого сайта свои сегменты
+                for (var site : siteRepository.findAll()) {
+                    try (var output = new SegmentsOutput()) {
+                        count += build(site, output);
+                        built.addAll(output.finish());
+                    }
+                }
+                postingsCount = count;
+                saveCount();
+                Files.createFile(directory.resolve(BUILT_MARKER));
+            } catch (IOException | RuntimeException e) {
+                log.error("Не удалось построить сегменты индекса, повтор через {} мс: {}", BUILD_RETRY_DELAY,
+                        e.getLocalizedMessage());
+                built.forEach(this::delete);
+                return false;
+            }
+
+            synchronized (lock) {
+                segments = List.copyOf(built);
+            }
+        }
+
+        ready = true;
+        log.info("Сегменты индекса построены за {} мс. Сегментов: {}, общий размер - {} байт.",
+                System.currentTimeMillis() - start, built.size(), built.stream().mapToLong(Segment::size).sum());
+        return true;
+    }
+
+    // Возвращает количество записанных вхождений сайта
+    private long build(Site site, SegmentsOutput output) throws IOException {
+        var lemmaIds = lemmaRepository.findBySiteIn(List.of(site)).stream()
+                .map(Lemma::getId)
+                .sorted()
+                .toList();
+        var builder = new PostingListBuilder();
+        var count = 0L;
+
+        for (var from = 0; from < lemmaIds.size(); from += BUILD_CHUNK_SIZE) {
+            var chunk = lemmaIds.subList(from, Math.min(from + BUILD_CHUNK_SIZE, lemmaIds.size()));
+            var currentLemmaId = -1;
+            for (var row : indexRepository.findPostings(chunk)) {
+                if (row.getLemmaId() != currentLemmaId && builder.size() > 0) {
+                    count += builder.size();
+                    output.add(currentLemmaId, false, builder.build(), NO_PAGES);
+                }
+                currentLemmaId = row.getLemmaId();
+                builder.add(row.getPageId(), row.getRank());
+            }
+            if (builder.size() > 0) {
+                count += builder.size();
+                output.add(currentLemmaId, false, builder.build(), NO_PAGES);
+            }
+        }
+
+        return count;
+    }
+
+    private Path getPath(long minSequence, long maxSequence) {
+        return Path.of(settings.getSegmentsPath(), String.format("%020d-%020d%s", minSequence, maxSequence,
+                Segment.SUFFIX));
+    }
+
+    private void delete(Segment segment) {
+        try {
+            Files.deleteIfExists(segment.path());
+        } catch (IOException e) {
+            log.warn("Не удалось удалить сегмент индекса {}: {}", segment.path(), e.getLocalizedMessage());
+        }
+    }
+
+    /**
+     * Запись лемм по возрастанию идентификаторов новыми сегментами. Сегмент заканчивается, когда его размер
+     * достигает maxSegmentSize. Вызывается при writeLock.
+     */
+    private class SegmentsOutput implements Closeable {
+
+        private final List<Segment> written = new ArrayList<>();
+        private SegmentWriter writer;
+        private boolean finished;
+
+        void add(int lemmaId, boolean cleared, PostingList added, int[] removed) throws IOException {
+            if (writer == null) {
+                var number = ++sequence;
+                writer = new SegmentWriter(getPath(number, number), number, number);
+            }
+
+            writer.add(lemmaId, cleared, added, removed);
+            if (writer.size() >= settings.getMaxSegmentSize()) {
+                written.add(writer.finish());
+                writer = null;
+            }
+        }
+
+        List<Segment> finish() throws IOException {
+            if (writer != null) {
+                written.add(writer.finish());
+                writer = null;
+            }
+            finished = true;
+            return written;
+        }
+
+        // При ошибке записанные сегменты удаляются: их изменения будут записаны повторно
+        @Override
+        public void close() throws IOException {
+            if (finished) {
+                return;
+            }
+            if (writer != null) {
+                writer.close();
+            }
+            written.forEach(SegmentStore.this::delete);
+        }
+    }
+}
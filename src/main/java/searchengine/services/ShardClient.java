@@ -0,0 +1,119 @@
+package searchengine.services;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Service;
+import searchengine.config.Shard;
+import searchengine.config.ShardSettings;
+import searchengine.dto.search.SearchResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.StringJoiner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Обращение к другим экземплярам поискового движка (shard-settings.shards). Каждый экземпляр индексирует свою часть
+ * сайтов в своей базе данных, экземпляр-координатор пересылает им поисковые запросы через /api/search.
+ */
+@Service
+@RequiredArgsConstructor
+public class ShardClient {
+
+    private final ShardSettings shardSettings;
+    private final ObjectMapper objectMapper;
+    private HttpClient httpClient;
+
+    public boolean isEnabled() {
+        return !shardSettings.getShards().isEmpty();
+    }
+
+    public List<Shard> getShards() {
+        return shardSettings.getShards();
+    }
+
+    // Время на передачу запроса и ответа: экземпляру отводится на поиск меньше оставшегося времени запроса
+    public Duration getNetworkReserve() {
+        return shardSettings.getNetworkReserve();
+    }
+
+    /**
+     * @param siteUrl адрес сайта
+     * @return экземпляр, который индексирует сайт, или null, если сайт не указан ни у одного экземпляра
+     */
+    public Shard findShard(String siteUrl) {
+        var url = normalize(siteUrl);
+        return shardSettings.getShards().stream()
+                .filter(shard -> shard.getSites().stream().map(ShardClient::normalize).anyMatch(url::equals))
+                .findFirst()
+                .orElse(null);
+    }
+
+    /**
+     * Асинхронный поисковый запрос к экземпляру. Ответ с ошибкой (HTTP 400) возвращается как есть, без исключения.
+     *
+     * @param site    сайт поиска или null - все сайты экземпляра
+     * @param cursor  курсор, полученный от этого же экземпляра, или null
+     * @param timeout время на поиск (параметр timeoutMs) или null - search-settings.timeout экземпляра
+     * @param wait    наибольшее время ожидания ответа
+     */
+    public CompletableFuture<SearchResponse> search(Shard shard, String site, String query, int limit, int offset,
+                                                    String cursor, boolean fuzzy, Duration timeout, Duration wait) {
+        var parameters = new StringJoiner("&");
+        addParameter(parameters, "query", query);
+        addParameter(parameters, "site", site);
+        addParameter(parameters, "limit", String.valueOf(limit));
+        addParameter(parameters, "offset", String.valueOf(offset));
+        addParameter(parameters, "cursor", cursor);
+        addParameter(parameters, "fuzzy", String.valueOf(fuzzy));
+        addParameter(parameters, "timeoutMs", timeout == null ? null : String.valueOf(Math.max(timeout.toMillis(), 1)));
+
+        var request = HttpRequest.newBuilder(URI.create(normalize(shard.getUrl()) + "/api/search?" + parameters))
+                .header("Accept", "application/json")
+                .timeout(wait)
+                .GET()
+                .build();
+
+        return getHttpClient().sendAsync(request, HttpResponse.BodyHandlers.ofString(StandardCharsets.UTF_8))
+                .thenApply(response -> parse(shard, response));
+    }
+
+    private SearchResponse parse(Shard shard, HttpResponse<String> response) {
+        try {
+            return objectMapper.readValue(response.body(), SearchResponse.class);
+        } catch (JsonProcessingException e) {
+            throw new CompletionException(new IOException("Некорректный ответ экземпляра " + shard.getUrl()
+                    + " (HTTP " + response.statusCode() + ")", e));
+        }
+    }
+
+    private synchronized HttpClient getHttpClient() {
+        if (httpClient == null) {
+            httpClient = HttpClient.newBuilder()
+                    .connectTimeout(shardSettings.getConnectTimeout())
+                    .build();
+        }
+        return httpClient;
+    }
+
+    private static void addParameter(StringJoiner parameters, String name, String value) {
+        if (value != null && !value.isBlank()) {
+            parameters.add(name + "=" + URLEncoder.encode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    // Адрес без "/" на конце в нижнем регистре, как при выборе сайта поиска
+    private static String normalize(String url) {
+        var result = url.endsWith("/") ? url.substring(0, url.length() - 1) : url;
+        return result.toLowerCase();
+    }
+}
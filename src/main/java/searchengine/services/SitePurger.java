@@ -0,0 +1,108 @@
+package searchengine.services;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+import searchengine.model.*;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Удаление данных индексации наборами строк вместо удаления сущностей по одной с каскадами внешних ключей. Данные
+ * удаляются от зависимых таблиц к главным, порциями по возрастанию первичного ключа. Каждая порция - отдельная
+ * короткая транзакция, поэтому блокируются только строки удаляемого сайта и только на время одной порции: поиск по
+ * другим сайтам не ожидает окончания удаления.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SitePurger {
+
+    private static final int PAGES_CHUNK_SIZE = 200; // Около 200 индексов на страницу - до 40 тысяч строк за запрос
+    private static final int LEMMAS_CHUNK_SIZE = 2000;
+    private static final int PROGRESS_LOG_STEP = 25; // Через сколько порций выводить прогресс в лог
+
+    private final SiteRepository siteRepository;
+    private final PageRepository pageRepository;
+    private final LemmaRepository lemmaRepository;
+    private final IndexRepository indexRepository;
+    private final PageContentRepository pageContentRepository;
+    private final PostingsRepository postingsRepository;
+    private final SegmentStore segmentStore;
+    private final SearchIndex searchIndex;
+    private final IndexGenerations indexGenerations;
+
+    public void purge(@NonNull Collection<Site> sites) {
+        for (var site : sites) {
+            purge(site);
+        }
+    }
+
+    /**
+     * Удаляет сайт и все его данные: индексы, содержимое страниц, страницы, сжатые списки вхождений, леммы. Данные
+     * лемм в сегментах индекса отбрасываются при слиянии сегментов.
+     *
+     * @param site удаляемая версия сайта
+     */
+    public void purge(@NonNull Site site) {
+        log.info("Запуск удаления данных сайта {}", site.getUrl());
+        var start = System.currentTimeMillis();
+        searchIndex.removeSite(site);
+        indexGenerations.increment(site);
+
+        var pagesCount = pageRepository.countBySite(site);
+        var deletedPages = 0L;
+        var chunks = 0;
+
+        var pageIds = pageRepository.findIdsBySite(site.getId(), PAGES_CHUNK_SIZE);
+        while (!pageIds.isEmpty()) {
+            indexRepository.deleteByPageIds(pageIds);
+            pageContentRepository.deleteByPageIds(pageIds);
+            deletedPages += pageRepository.deleteByIds(pageIds);
+
+            if (++chunks % PROGRESS_LOG_STEP == 0) {
+                log.info("Удаление данных сайта {}: удалено страниц {} из {}", site.getUrl(), deletedPages,
+                        pagesCount);
+            }
+
+            pageIds = pageRepository.findIdsBySite(site.getId(), PAGES_CHUNK_SIZE);
+        }
+
+        var deletedLemmas = 0L;
+        var lemmaIds = lemmaRepository.findIdsBySite(site.getId(), LEMMAS_CHUNK_SIZE);
+        while (!lemmaIds.isEmpty()) {
+            postingsRepository.deleteByLemmaIds(lemmaIds);
+            segmentStore.clear(lemmaIds);
+            deletedLemmas += lemmaRepository.deleteByIds(lemmaIds);
+
+            lemmaIds = lemmaRepository.findIdsBySite(site.getId(), LEMMAS_CHUNK_SIZE);
+        }
+
+        siteRepository.deleteById(site.getId());
+
+        log.info("Данные сайта {} удалены за {} мс. Удалено страниц: {}, лемм: {}.", site.getUrl(),
+                System.currentTimeMillis() - start, deletedPages, deletedLemmas);
+    }
+
+    /**
+     * Удаляет страницу и её индексы. Частота лемм страницы уменьшается, леммы, которые больше не встречаются, удаляются.
+     *
+     * @param page     удаляемая страница
+     * @param lemmaIds идентификаторы лемм страницы
+     */
+    @Transactional
+    public void purgePage(@NonNull Page page, @NonNull Collection<Integer> lemmaIds) {
+        var pageIds = List.of(page.getId());
+
+        indexRepository.deleteByPageIds(pageIds);
+        if (!lemmaIds.isEmpty()) {
+            lemmaRepository.deleteUnusedByIds(lemmaIds);
+            lemmaRepository.decrementFrequency(lemmaIds); // Удалённые леммы уже не изменяются
+        }
+        pageContentRepository.deleteByPageIds(pageIds);
+        pageRepository.deleteByIds(pageIds);
+    }
+}
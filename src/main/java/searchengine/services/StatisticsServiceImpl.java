@@ -12,6 +12,7 @@ import searchengine.model.*;
 
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -24,6 +25,7 @@ public class StatisticsServiceImpl implements StatisticsService {
     private final SiteRepository siteRepository;
     private final PageRepository pageRepository;
     private final LemmaRepository lemmaRepository;
+    private final ReplicaRouting replicaRouting;
 
 
     @Override
@@ -31,14 +33,21 @@ public class StatisticsServiceImpl implements StatisticsService {
 
         var start = System.currentTimeMillis();
 
-        var sitesFromDB = Streamable.of(siteRepository.findAll()).toList();
+        // Для каждого сайта - последняя версия: во время повторной индексации выводится ход её индексации
+        var sitesFromDB = Streamable.of(siteRepository.findAll()).stream()
+                .collect(Collectors.toMap(Site::getUrl, site -> site,
+                        (first, second) -> first.getVersion() > second.getVersion() ? first : second,
+                        LinkedHashMap::new))
+                .values().stream()
+                .toList();
         var isIndexing = sitesFromDB.stream().anyMatch(site -> site.getStatus() == IndexingStatus.INDEXING);
 
-        var pages = pageRepository.findBySiteIn(sitesFromDB);
+        // Страницы и леммы читаются из реплики, если она задана и сайты не изменялись недавно
+        var pages = replicaRouting.read(sitesFromDB, () -> pageRepository.findBySiteIn(sitesFromDB));
         var pagesCounts = pages.stream()
                 .collect(Collectors.groupingBy(Page::getSite, Collectors.summingInt(value -> 1)));
 
-        List<Lemma> lemmas = lemmaRepository.findBySiteIn(sitesFromDB);
+        List<Lemma> lemmas = replicaRouting.read(sitesFromDB, () -> lemmaRepository.findBySiteIn(sitesFromDB));
         var lemmasCounts = lemmas.stream()
                 .collect(Collectors.groupingBy(Lemma::getSite, Collectors.summingInt(value -> 1)));
 
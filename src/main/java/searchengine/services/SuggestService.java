@@ -0,0 +1,8 @@
+package searchengine.services;
+
+import searchengine.dto.search.SuggestResponse;
+
+public interface SuggestService {
+    SuggestResponse suggestSite(String siteUrl, String query, int limit);
+    SuggestResponse suggestAllSites(String query, int limit);
+}
@@ -0,0 +1,105 @@
+package searchengine.services;
+
+import lombok.NonNull;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import lombok.val;
+import org.springframework.stereotype.Service;
+import searchengine.config.SearchSettings;
+import searchengine.config.SitesList;
+import searchengine.dto.search.SuggestResponse;
+import searchengine.model.Site;
+import searchengine.model.SiteRepository;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Подсказки по началу последнего слова поискового запроса по словарям лемм сайтов в памяти (LemmaDictionaries).
+ * Из базы данных читаются только сайты запроса. Словари опубликованных сайтов строятся в фоне, запрос по сайту, словарь
+ * которого ещё не построен (сайт только что опубликован), ожидает его построения.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SuggestServiceImpl implements SuggestService {
+
+    private final SitesList sitesSettings;
+    private final SearchSettings searchSettings;
+    private final SiteRepository siteRepository;
+    private final LemmaDictionaries lemmaDictionaries;
+
+    @Override
+    public SuggestResponse suggestSite(@NonNull String siteUrl, String query, int limit) {
+        if (siteUrl.endsWith("/")) {
+            siteUrl = siteUrl.substring(0, siteUrl.length() - 1);
+        }
+        val url = siteUrl.toLowerCase();
+
+        var notInSettings = sitesSettings.getSites().stream()
+                .map(searchengine.config.Site::getUrl)
+                .noneMatch(s -> s.equals(url));
+        if (notInSettings) {
+            return SuggestResponse.builder().result(false).error("Сайт не указан в настройках индексации").build();
+        }
+
+        // Подсказки строятся по опубликованной версии сайта, как и поиск. До первой публикации подсказок нет.
+        var site = siteRepository.findByPublishedTrueAndUrl(url);
+        return suggest(site == null ? Collections.emptyList() : List.of(site), query, limit);
+    }
+
+    @Override
+    public SuggestResponse suggestAllSites(String query, int limit) {
+        var sitesInSettings = sitesSettings.getSites().stream()
+                .map(searchengine.config.Site::getUrl)
+                .toList();
+
+        return suggest(siteRepository.findByPublishedTrueAndUrlIn(sitesInSettings), query, limit);
+    }
+
+    private SuggestResponse suggest(List<Site> sites, String query, int limit) {
+        if (query == null || query.isBlank()) {
+            return SuggestResponse.builder().result(false).error("Задан пустой запрос").build();
+        }
+        if (limit < 1) {
+            return SuggestResponse.builder().result(false).error("Параметр limit должен быть больше нуля").build();
+        }
+        // Словари хранят не больше search-settings.suggest-size подсказок на префикс
+        limit = Math.min(limit, searchSettings.getSuggestSize());
+
+        // Дополняется последнее слово. Если запрос заканчивается пробелом, слово ещё не начато.
+        var wordStart = 0;
+        for (var i = query.length() - 1; i >= 0; i--) {
+            if (Character.isWhitespace(query.charAt(i))) {
+                wordStart = i + 1;
+                break;
+            }
+        }
+        var prefix = query.substring(wordStart).toLowerCase();
+        if (prefix.isEmpty()) {
+            return SuggestResponse.builder().result(true).suggestions(Collections.emptyList()).build();
+        }
+
+        // Частоты одной леммы на разных сайтах складываются. Каждый сайт даёт только свои самые частые леммы,
+        // поэтому лемма, частая лишь в сумме по сайтам, может не попасть в подсказку.
+        var frequencies = new HashMap<String, Long>();
+        var size = searchSettings.getSuggestSize();
+        for (var site : sites) {
+            for (var suggestion : lemmaDictionaries.getSuggestions(site).suggest(prefix, size)) {
+                frequencies.merge(suggestion.lemma(), (long) suggestion.frequency(), Long::sum);
+            }
+        }
+
+        var head = query.substring(0, wordStart);
+        var suggestions = frequencies.entrySet().stream()
+                .sorted(Map.Entry.<String, Long>comparingByValue().reversed()
+                        .thenComparing(Map.Entry.comparingByKey()))
+                .limit(limit)
+                .map(entry -> head + entry.getKey())
+                .toList();
+
+        return SuggestResponse.builder().result(true).suggestions(suggestions).build();
+    }
+}
@@ -0,0 +1,51 @@
+-- Исходная схема (в прежних версиях создавалась Hibernate). Для существующих баз данных не выполняется:
+-- при первом запуске Flyway они отмечаются как версия 1 (spring.flyway.baseline-on-migrate).
+
+CREATE TABLE sites
+(
+    id          INT          NOT NULL AUTO_INCREMENT,
+    status      ENUM ('INDEXING', 'INDEXED', 'FAILED') NOT NULL,
+    status_time DATETIME     NOT NULL,
+    last_error  TEXT,
+    url         VARCHAR(255) NOT NULL,
+    name        VARCHAR(255) NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT uk_sites_url UNIQUE (url)
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE pages
+(
+    id      INT          NOT NULL AUTO_INCREMENT,
+    site_id INT          NOT NULL,
+    path    VARCHAR(255) NOT NULL,
+    code    INT          NOT NULL,
+    content MEDIUMTEXT   NOT NULL,
+    PRIMARY KEY (id),
+    INDEX idx_pages_path (path),
+    CONSTRAINT fk_pages_site FOREIGN KEY (site_id) REFERENCES sites (id) ON DELETE CASCADE
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE lemmas
+(
+    id        INT          NOT NULL AUTO_INCREMENT,
+    site_id   INT          NOT NULL,
+    lemma     VARCHAR(255) NOT NULL,
+    frequency INT          NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_lemmas_site FOREIGN KEY (site_id) REFERENCES sites (id) ON DELETE CASCADE
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
+
+CREATE TABLE indexes
+(
+    id         INT   NOT NULL AUTO_INCREMENT,
+    page_id    INT   NOT NULL,
+    lemma_id   INT   NOT NULL,
+    rank_count FLOAT NOT NULL,
+    PRIMARY KEY (id),
+    CONSTRAINT fk_indexes_page FOREIGN KEY (page_id) REFERENCES pages (id) ON DELETE CASCADE,
+    CONSTRAINT fk_indexes_lemma FOREIGN KEY (lemma_id) REFERENCES lemmas (id) ON DELETE CASCADE
+) ENGINE = InnoDB
+  DEFAULT CHARSET = utf8mb4;
@@ -0,0 +1,21 @@
+-- Таблицы, добавленные для отдельного хранения содержимого страниц и сжатых списков вхождений. Могли быть уже созданы
+-- Hibernate в базах данных, обновлённых до перехода на Flyway.
+
+CREATE TABLE IF NOT EXISTS page_contents
+(
+    page_id INT        NOT NULL,
+    data    MEDIUMBLOB NOT NULL,
+    PRIMARY KEY (page_id),
+    CONSTRAINT fk_page_contents_page FOREIGN KEY (page_id) REFERENCES pages (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+CREATE TABLE IF NOT EXISTS postings
+(
+    lemma_id       INT      NOT NULL,
+    postings_count INT      NOT NULL,
+    data           LONGBLOB NOT NULL,
+    PRIMARY KEY (lemma_id),
+    CONSTRAINT fk_postings_lemma FOREIGN KEY (lemma_id) REFERENCES lemmas (id) ON DELETE CASCADE
+) ENGINE = InnoDB;
+
+-- Содержимое страниц из прежнего столбца pages.content переносится по частям миграцией V2_1 (db.migration)
@@ -0,0 +1,84 @@
+-- Индексы под фактические запросы репозиториев searchengine.model. Планы запросов описаны в docs/query-plans.md.
+
+-- pages: поиск по (site_id, path) через хеш пути фиксированной длины вместо индекса по VARCHAR(255).
+-- Хеш - первые 60 бит MD5 пути (см. Page.hashPath), поэтому значение всегда помещается в BIGINT.
+ALTER TABLE pages
+    ADD COLUMN path_hash BIGINT NOT NULL DEFAULT 0 AFTER path;
+
+UPDATE pages
+SET path_hash = CONV(LEFT(MD5(path), 15), 16, 10);
+
+CREATE INDEX idx_pages_site_path_hash ON pages (site_id, path_hash);
+
+-- Прежний индекс по path (в базах данных, созданных Hibernate, имя индекса сгенерировано)
+SET @path_index = (SELECT MIN(index_name)
+                   FROM information_schema.statistics
+                   WHERE table_schema = DATABASE()
+                     AND table_name = 'pages'
+                     AND column_name = 'path'
+                     AND seq_in_index = 1);
+SET @drop_path_index = IF(@path_index IS NULL, 'DO 0', CONCAT('DROP INDEX `', @path_index, '` ON pages'));
+PREPARE statement FROM @drop_path_index;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+-- lemmas: точное сравнение лемм (без учёта регистра и диакритики "е" и "ё" считались бы одной леммой)
+ALTER TABLE lemmas
+    MODIFY lemma VARCHAR(255) CHARACTER SET utf8mb4 COLLATE utf8mb4_bin NOT NULL;
+
+-- Объединение дублей лемм, появившихся до введения уникальности (site_id, lemma). Остаётся лемма с меньшим id.
+CREATE TEMPORARY TABLE lemma_duplicates
+(
+    id      INT NOT NULL PRIMARY KEY,
+    keep_id INT NOT NULL
+);
+
+INSERT INTO lemma_duplicates (id, keep_id)
+SELECT l.id, k.keep_id
+FROM lemmas l
+         JOIN (SELECT site_id, lemma, MIN(id) AS keep_id
+               FROM lemmas
+               GROUP BY site_id, lemma
+               HAVING COUNT(*) > 1) k ON k.site_id = l.site_id AND k.lemma = l.lemma AND k.keep_id <> l.id;
+
+-- Индексы дублей переносятся на оставляемую лемму, кроме уже существующих у неё страниц
+DELETE i
+FROM indexes i
+         JOIN lemma_duplicates d ON d.id = i.lemma_id
+         JOIN indexes k ON k.lemma_id = d.keep_id AND k.page_id = i.page_id;
+
+UPDATE indexes i
+    JOIN lemma_duplicates d ON d.id = i.lemma_id
+SET i.lemma_id = d.keep_id;
+
+-- Дубли индексов (lemma_id, page_id): остаётся индекс с меньшим id
+DELETE i
+FROM indexes i
+         JOIN indexes k ON k.lemma_id = i.lemma_id AND k.page_id = i.page_id AND k.id < i.id;
+
+UPDATE lemmas l
+    JOIN (SELECT i.lemma_id, COUNT(*) AS frequency
+          FROM indexes i
+          WHERE i.lemma_id IN (SELECT keep_id FROM lemma_duplicates)
+          GROUP BY i.lemma_id) f ON f.lemma_id = l.id
+SET l.frequency = f.frequency;
+
+-- Сжатые списки вхождений объединённых лемм устарели. Пустая таблица postings строится заново при запуске.
+DELETE
+FROM postings
+WHERE EXISTS (SELECT 1 FROM lemma_duplicates);
+
+DELETE l
+FROM lemmas l
+         JOIN lemma_duplicates d ON d.id = l.id;
+
+DROP TEMPORARY TABLE lemma_duplicates;
+
+ALTER TABLE lemmas
+    ADD CONSTRAINT uk_lemmas_site_lemma UNIQUE (site_id, lemma);
+
+-- indexes: уникальность пары (lemma_id, page_id). Ключ заменяет автоматический индекс внешнего ключа по lemma_id и
+-- упорядочивает вхождения леммы по page_id. Отдельный покрывающий индекс с rank_count не добавляется: indexes - самая
+-- нагружаемая записью таблица, и каждый вторичный индекс замедляет индексацию.
+ALTER TABLE indexes
+    ADD CONSTRAINT uk_indexes_lemma_page UNIQUE (lemma_id, page_id);
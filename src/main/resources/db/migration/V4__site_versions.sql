@@ -0,0 +1,26 @@
+-- Версии индекса сайта. Полная индексация строит новую версию (новую строку sites со своими страницами, леммами и
+-- индексами), поиск до её завершения выполняется по опубликованной версии. У сайта не больше одной опубликованной
+-- версии, за этим следит приложение.
+ALTER TABLE sites
+    ADD COLUMN version   INT     NOT NULL DEFAULT 1 AFTER name,
+    ADD COLUMN published BOOLEAN NOT NULL DEFAULT FALSE AFTER version;
+
+-- Существующие сайты - их единственные версии
+UPDATE sites
+SET published = TRUE;
+
+-- Прежняя уникальность url (в базах данных, созданных Hibernate, имя ограничения сгенерировано)
+SET @url_index = (SELECT MIN(index_name)
+                  FROM information_schema.statistics
+                  WHERE table_schema = DATABASE()
+                    AND table_name = 'sites'
+                    AND column_name = 'url'
+                    AND seq_in_index = 1
+                    AND non_unique = 0);
+SET @drop_url_index = IF(@url_index IS NULL, 'DO 0', CONCAT('DROP INDEX `', @url_index, '` ON sites'));
+PREPARE statement FROM @drop_url_index;
+EXECUTE statement;
+DEALLOCATE PREPARE statement;
+
+ALTER TABLE sites
+    ADD CONSTRAINT uk_sites_url_version UNIQUE (url, version);